@@ -2,11 +2,25 @@ package de.melb00m.tr4o.app;
 
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigRenderOptions;
+import de.melb00m.tr4o.app.subcommands.CoverageQuery;
+import de.melb00m.tr4o.app.subcommands.LibraryCheck;
 import de.melb00m.tr4o.app.subcommands.LibraryRegeneration;
+import de.melb00m.tr4o.app.subcommands.LibraryRollback;
+import de.melb00m.tr4o.app.subcommands.OverlapReport;
+import de.melb00m.tr4o.app.subcommands.ResidentServer;
+import de.melb00m.tr4o.app.subcommands.ScanWorker;
 import de.melb00m.tr4o.app.subcommands.TransparentRoadsGenerator;
 import de.melb00m.tr4o.exceptions.Exceptions;
 import de.melb00m.tr4o.misc.LazyAttribute;
 import de.melb00m.tr4o.misc.Verify;
+import de.melb00m.tr4o.monitoring.EventStream;
+import de.melb00m.tr4o.monitoring.FlightRecording;
+import de.melb00m.tr4o.progress.IoThrottle;
+import de.melb00m.tr4o.progress.ProgressTracker;
+import de.melb00m.tr4o.server.ServerClient;
+import de.melb00m.tr4o.server.ServerProtocol;
+import de.melb00m.tr4o.tiles.ScanCheckpoint;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,10 +30,15 @@ import org.apache.logging.log4j.core.config.Configurator;
 import picocli.CommandLine;
 
 import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Main entry-class for the application and the primary picocli @{@link
@@ -35,7 +54,7 @@ import java.util.Set;
     header = "Transparent Roads for Ortho-Covered Scenery in X-Plane 11",
     footer =
         "For information on how this application operates, please refer to the documentation at \nhttps://github.com/melb00m/Transparency4Ortho")
-public final class Transparency4Ortho implements Runnable {
+public final class Transparency4Ortho implements Runnable, CommandLine.IExitCodeGenerator {
 
   public static final Config CONFIG = ConfigFactory.defaultApplication().resolve();
   private static final Logger LOG = LogManager.getLogger(Transparency4Ortho.class);
@@ -55,6 +74,105 @@ public final class Transparency4Ortho implements Runnable {
       description = "Removes and re-creates the Transparency4Ortho library folder, then exits.")
   private boolean regenerateLibraryMode;
 
+  @CommandLine.Option(
+      names = {"--deltaSync"},
+      description =
+          "With --regenerateLibrary: builds the new library next to the existing one, re-using all files that did not change, "
+              + "and replaces the existing library only when done. The library stays available to X-Plane the whole time.")
+  private boolean deltaSync;
+
+  @CommandLine.Option(
+      names = {"--rollback"},
+      arity = "0..1",
+      fallbackValue = "0",
+      paramLabel = "<generation>",
+      description =
+          "Restores a generation of the Transparency4Ortho library recorded in the backup-folder, then exits. "
+              + "Without a generation, the one recorded before the current state of the library is restored.")
+  private Integer rollbackGeneration;
+
+  @CommandLine.Option(
+      names = {"--check"},
+      description =
+          "Checks without scanning whether the Transparency4Ortho library is present and up to date with the installed ortho-scenery, then exits. "
+              + "Exit codes: 0 = up to date, 2 = library missing, 3 = library.txt needs to be regenerated, 1 = error.")
+  private boolean checkMode;
+
+  @CommandLine.Option(
+      names = {"--server"},
+      description =
+          "Runs a resident server that keeps the scan in memory and answers the requests of later calls, until it is stopped.")
+  private boolean serverMode;
+
+  @CommandLine.Option(
+      names = {"--stopServer"},
+      description = "Stops the resident server of the given X-Plane folder, then exits.")
+  private boolean stopServerMode;
+
+  @CommandLine.Option(
+      names = {"--noServer"},
+      description =
+          "Never forward to a running resident server, always run in this process instead.")
+  private boolean noServer;
+
+  @CommandLine.Option(
+      names = {"--resume"},
+      description =
+          "Continues the scan of a previous run that was interrupted or ran out of its time budget, instead of scanning everything again.")
+  private boolean resume;
+
+  @CommandLine.Option(
+      names = {"--timeBudget"},
+      paramLabel = "<minutes>",
+      description =
+          "Stops scanning further scenery-packs after the given number of minutes and creates the library.txt from the sceneries scanned so far. "
+              + "Use --resume in a later run to continue the scan.")
+  private Integer timeBudgetMinutes;
+
+  @CommandLine.Option(
+      names = {"--background"},
+      description =
+          "Limits the file-operations and bytes per second and runs at a low priority, backing off further while the storage is busy. "
+              + "Use this while X-Plane is running, so it does not stutter; the run takes longer instead.")
+  private boolean background;
+
+  @CommandLine.Option(
+      names = {"--scanWorkers"},
+      paramLabel = "<count>",
+      description =
+          "Splits the scan across the given number of worker-processes, plus the workers on other machines configured in overlay-scanner.distributed. "
+              + "Helps if the scenery is spread over more storage than a single process can keep busy.")
+  private Integer scanWorkers;
+
+  @CommandLine.Option(
+      names = {"--scanShard"},
+      hidden = true,
+      description =
+          "Runs as worker of a distributed scan: scans the folders read from the standard-input and writes the tiles found to the standard-output.")
+  private boolean scanShardMode;
+
+  @CommandLine.Option(
+      names = {"-q", "--queryRegion"},
+      paramLabel = "<region>",
+      description =
+          "Scans for ortho-scenery and reports the coverage of the given region, then exits. "
+              + "The region is either a single tile (e.g. '+47+011') or 'minLat,minLon,maxLat,maxLon' (e.g. '45,5,55,15').")
+  private String queryRegion;
+
+  @CommandLine.Option(
+      names = {"--analyzeOverlaps"},
+      description =
+          "Scans for ortho-scenery and reports the tiles that are provided by more than one ortho-scenery, "
+              + "together with the disk-space the hidden ones cost, then exits.")
+  private boolean analyzeOverlapsMode;
+
+  @CommandLine.Option(
+      names = {"--writeDisableList"},
+      paramLabel = "<file>",
+      description =
+          "With --analyzeOverlaps: writes the scenery_packs.ini-entries that disable the ortho-sceneries hidden completely to the given file.")
+  private Path disableListFile;
+
   @CommandLine.Option(
       names = {"-r", "--removeExistingRegions"},
       description =
@@ -72,6 +190,27 @@ public final class Transparency4Ortho implements Runnable {
       description = "Show (a lot!) of additional output.")
   private boolean trace;
 
+  @CommandLine.Option(
+      names = {"--detailsToLogFileOnly"},
+      description =
+          "Write the additional output of --verbose or --trace only to the log-file and keep the console output short.")
+  private boolean detailsToLogFileOnly;
+
+  @CommandLine.Option(
+      names = {"--events"},
+      paramLabel = "<format>",
+      description =
+          "Writes structured events (ortho-sceneries found, tiles covered, progress, errors) to the console as soon as they happen, "
+              + "instead of the regular output. The only format supported is 'ndjson' (one JSON-object per line).")
+  private String eventFormat;
+
+  @CommandLine.Option(
+      names = {"--recordJfr"},
+      paramLabel = "<file>",
+      description =
+          "Records the run with the Java Flight Recorder (including Transparency4Ortho's own events) and writes the recording to the given file.")
+  private Path jfrRecordingFile;
+
   @CommandLine.Option(
       names = {"-s", "--skipLibraryModifications"},
       description =
@@ -83,17 +222,55 @@ public final class Transparency4Ortho implements Runnable {
       description = "Ignores checksum mismatches on the default X-Plane roads-library.")
   private boolean ignoreChecksumErrors;
 
+  private final FileSystem fileSystem;
   private Level consoleLogLevel = Level.INFO;
+  private int exitCode = 0;
   private LazyAttribute<Path> applicationFolder = new LazyAttribute<>(this::calcApplicationPath);
+  private final ProgressTracker progressTracker = new ProgressTracker();
+  private EventStream eventStream = EventStream.none();
+
+  /** Creates the command operating on the default file-system. */
+  public Transparency4Ortho() {
+    this(FileSystems.getDefault());
+  }
+
+  /**
+   * Creates the command operating on the given file-system.
+   *
+   * <p>All paths passed on the command-line are resolved against this file-system, so that the
+   * X-Plane installation (and thus the generated library) can reside on any file-system provider,
+   * e.g. an in-memory file-system for benchmarks.
+   *
+   * @param fileSystem File-system containing the X-Plane installation
+   */
+  public Transparency4Ortho(final FileSystem fileSystem) {
+    this.fileSystem = fileSystem;
+  }
 
   public static void main(String[] args) {
-    new CommandLine(new Transparency4Ortho()).execute(args);
+    final var exitCode = new CommandLine(new Transparency4Ortho()).execute(args);
+    if (exitCode != 0) {
+      System.exit(exitCode);
+    }
+  }
+
+  @Override
+  public int getExitCode() {
+    return exitCode;
   }
 
   public Level getConsoleLogLevel() {
     return consoleLogLevel;
   }
 
+  public ProgressTracker getProgressTracker() {
+    return progressTracker;
+  }
+
+  public EventStream getEventStream() {
+    return eventStream;
+  }
+
   public boolean isIgnoreChecksumErrors() {
     return ignoreChecksumErrors;
   }
@@ -110,38 +287,144 @@ public final class Transparency4Ortho implements Runnable {
     return regenerateLibraryMode;
   }
 
+  public boolean isDeltaSync() {
+    return deltaSync;
+  }
+
+  public Optional<Integer> getRollbackGeneration() {
+    return Optional.ofNullable(rollbackGeneration);
+  }
+
+  public String getQueryRegion() {
+    return queryRegion;
+  }
+
   public boolean isRemoveExistingEntries() {
     return removeExistingEntries;
   }
 
+  public Optional<Path> getDisableListFile() {
+    // written on the default file-system, like other output of the user
+    return Optional.ofNullable(disableListFile);
+  }
+
+  public boolean isResume() {
+    return resume;
+  }
+
+  public Optional<Duration> getTimeBudget() {
+    return Optional.ofNullable(timeBudgetMinutes).map(Duration::ofMinutes);
+  }
+
+  public boolean isBackground() {
+    return background;
+  }
+
+  /** @return Priority of the threads doing the work, which is lowered with {@code --background} */
+  public int getWorkerThreadPriority() {
+    return background ? Thread.MIN_PRIORITY : Thread.NORM_PRIORITY;
+  }
+
+  public Optional<Integer> getScanWorkers() {
+    return Optional.ofNullable(scanWorkers);
+  }
+
+  /**
+   * @return {@code true} if the console is used for machine-readable output (events or the results
+   *     of a scan-worker), so neither log-messages nor progress-bars must be written to it
+   */
+  public boolean isConsoleReserved() {
+    return null != eventFormat || scanShardMode;
+  }
+
   @Override
   public void run() {
     try {
+      // checked before the console is handed over to the events, so the error is still shown
+      Verify.withErrorMessage(
+              "Unsupported event format (only 'ndjson' is supported): %s", eventFormat)
+          .argument(null == eventFormat || "ndjson".equals(eventFormat));
       setupLogging();
+      if (null != eventFormat) {
+        eventStream = EventStream.ndjson(System.out, progressTracker);
+      }
       verifyBasicParameters();
+      if (background) {
+        progressTracker.setThrottle(IoThrottle.of(config().getConfig("general.background")));
+        Thread.currentThread().setPriority(getWorkerThreadPriority());
+      }
+      eventStream.emit("run-started", "xPlanePath", getXPlanePath().toAbsolutePath());
       // select mode of operation
       // if things get a little more elaborate, this could be replaced by using actual subcommands
       // of PicoCli - for now, this would probably a little bit over the top
-      if (regenerateLibraryMode) {
-        new LibraryRegeneration(this).run();
-      } else {
-        new TransparentRoadsGenerator(this).run();
+      final var forwarded = forwardToServer();
+      if (forwarded.isPresent()) {
+        exitCode = forwarded.get();
+        return;
       }
+      try (final var recording = startFlightRecording()) {
+        if (scanShardMode) {
+          new ScanWorker(this).run();
+        } else if (serverMode) {
+          new ResidentServer(this).run();
+        } else if (checkMode) {
+          final var check = new LibraryCheck(this);
+          check.run();
+          exitCode = check.getExitCode();
+        } else if (regenerateLibraryMode) {
+          new LibraryRegeneration(this).run();
+        } else if (null != rollbackGeneration) {
+          new LibraryRollback(this).run();
+        } else if (null != queryRegion) {
+          new CoverageQuery(this).run();
+        } else if (analyzeOverlapsMode) {
+          new OverlapReport(this).run();
+        } else {
+          new TransparentRoadsGenerator(this).run();
+        }
+      }
+      closeEventStream(exitCode);
     } catch (IllegalArgumentException e) {
       LOG.error("ERROR: {}", e.getMessage(), e);
       LOG.info("Use --help to show usage information");
-      System.exit(1);
+      exitOnError(e);
     } catch (java.lang.Exception e) {
       LOG.error("ERROR: {}", e.getMessage(), e);
-      System.exit(1);
+      exitOnError(e);
     }
   }
 
+  private void exitOnError(final Exception e) {
+    eventStream.emit("error", "message", e.getMessage());
+    closeEventStream(1);
+    System.exit(1);
+  }
+
+  private void closeEventStream(final int runExitCode) {
+    eventStream.emitProgress();
+    eventStream.emit("run-finished", "exitCode", runExitCode);
+    eventStream.close();
+  }
+
   private void setupLogging() {
-    if (debug) consoleLogLevel = Level.DEBUG;
-    if (trace) consoleLogLevel = Level.TRACE;
-    if (consoleLogLevel != Level.INFO) {
-      Configurator.setRootLevel(consoleLogLevel);
+    if (isConsoleReserved()) {
+      // the console belongs to the events, the regular output only goes to the log-file
+      final var context = LoggerContext.getContext(false);
+      final var rootLogger = context.getRootLogger();
+      rootLogger.getAppenders().values().stream()
+          .filter(ConsoleAppender.class::isInstance)
+          .forEach(rootLogger::removeAppender);
+      context.updateLoggers();
+    }
+    var logLevel = Level.INFO;
+    if (debug) logLevel = Level.DEBUG;
+    if (trace) logLevel = Level.TRACE;
+    if (logLevel != Level.INFO) {
+      Configurator.setRootLevel(logLevel);
+      if (detailsToLogFileOnly) {
+        return;
+      }
+      consoleLogLevel = logLevel;
       // for the console-appender, we need to modify the threshold filter to the new log-level
       final var context = LoggerContext.getContext(false);
       context.getRootLogger().getAppenders().values().stream()
@@ -152,9 +435,102 @@ public final class Transparency4Ortho implements Runnable {
     }
   }
 
+  /**
+   * Determines the request this call is forwarded to a resident server with. Only calls that the
+   * server answers exactly like this process would are forwarded: any option the server does not
+   * know about (as it only receives the request) makes the call run in this process.
+   *
+   * @return Request for the server, or empty if the call has to be run in this process
+   */
+  Optional<String> buildServerRequest() {
+    if (stopServerMode) {
+      return Optional.of(ServerProtocol.SHUTDOWN);
+    }
+    if (serverMode
+        || noServer
+        || regenerateLibraryMode
+        || deltaSync
+        || null != rollbackGeneration
+        || analyzeOverlapsMode
+        || resume
+        || null != timeBudgetMinutes
+        || null != scanWorkers
+        || scanShardMode
+        || background
+        || null != eventFormat
+        || null != jfrRecordingFile
+        || skipLibraryModifications
+        || ignoreChecksumErrors
+        || debug
+        || trace
+        || detailsToLogFileOnly
+        || getOrthoSceneryPaths().isPresent()) {
+      return Optional.empty();
+    }
+    if (checkMode) {
+      return Optional.of(ServerProtocol.STATUS);
+    }
+    if (null != queryRegion) {
+      return Optional.of(ServerProtocol.QUERY + " " + queryRegion);
+    }
+    return Optional.of(
+        removeExistingEntries
+            ? ServerProtocol.GENERATE + " " + ServerProtocol.REMOVE_EXISTING
+            : ServerProtocol.GENERATE);
+  }
+
+  /**
+   * Sends the request to the resident server of the X-Plane folder, if one is running with the
+   * same configuration and the request can be answered by it.
+   *
+   * @return Exit-code of the forwarded request, or empty if it has to be run in this process
+   */
+  private Optional<Integer> forwardToServer() {
+    final var request = buildServerRequest();
+    final var endpointFile = getXPlanePath().resolve(config().getString("libgen.state.server-file"));
+    final var response =
+        request.flatMap(
+            req ->
+                ServerClient.find(endpointFile)
+                    .filter(
+                        client -> {
+                          final var sameConfig = client.servesConfig(getConfigFingerprint());
+                          if (!sameConfig) {
+                            LOG.debug("Resident server runs with a different configuration");
+                          }
+                          return sameConfig || stopServerMode;
+                        })
+                    .flatMap(
+                        client -> {
+                          LOG.debug("Forwarding '{}' to resident server", req);
+                          return client.send(req, LOG::info);
+                        }));
+    if (stopServerMode && response.isEmpty()) {
+      LOG.info("No resident server is running for {}", getXPlanePath());
+      return Optional.of(0);
+    }
+    return response;
+  }
+
+  private FlightRecording startFlightRecording() {
+    return null != jfrRecordingFile
+        ? FlightRecording.start(jfrRecordingFile)
+        : FlightRecording.none();
+  }
+
   private void verifyBasicParameters() {
     Verify.withErrorMessage("X-Plane path is not a valid folder: %s", this::getXPlanePath)
         .argument(Files.isDirectory(getXPlanePath()));
+    Verify.withErrorMessage("--writeDisableList can only be used with --analyzeOverlaps")
+        .argument(null == disableListFile || analyzeOverlapsMode);
+    Verify.withErrorMessage("Time budget must be at least one minute: %s", timeBudgetMinutes)
+        .argument(null == timeBudgetMinutes || timeBudgetMinutes > 0);
+    Verify.withErrorMessage("Number of scan-workers must not be negative: %s", scanWorkers)
+        .argument(null == scanWorkers || scanWorkers >= 0);
+    Verify.withErrorMessage("--resume cannot be combined with --scanWorkers")
+        .argument(!resume || null == scanWorkers);
+    Verify.withErrorMessage("Library generation must not be negative: %s", rollbackGeneration)
+        .argument(null == rollbackGeneration || rollbackGeneration >= 0);
     getOrthoSceneryPaths()
         .ifPresent(
             overlays ->
@@ -166,11 +542,23 @@ public final class Transparency4Ortho implements Runnable {
   }
 
   public Path getXPlanePath() {
-    return xPlanePath;
+    return onFileSystem(xPlanePath);
   }
 
   public Optional<Set<Path>> getOrthoSceneryPaths() {
-    return null != orthoPath && !orthoPath.isEmpty() ? Optional.of(orthoPath) : Optional.empty();
+    return null != orthoPath && !orthoPath.isEmpty()
+        ? Optional.of(orthoPath.stream().map(this::onFileSystem).collect(Collectors.toSet()))
+        : Optional.empty();
+  }
+
+  /** @return File-system containing the X-Plane installation */
+  public FileSystem getFileSystem() {
+    return fileSystem;
+  }
+
+  private Path onFileSystem(final Path path) {
+    // picocli always converts to paths of the default file-system
+    return path.getFileSystem() == fileSystem ? path : fileSystem.getPath(path.toString());
   }
 
   private Path calcApplicationPath() {
@@ -194,4 +582,10 @@ public final class Transparency4Ortho implements Runnable {
   public Config config() {
     return CONFIG;
   }
+
+  /** @return Fingerprint of the configuration, to tell whether a server runs with the same one */
+  public String getConfigFingerprint() {
+    return ScanCheckpoint.fingerprint(
+        List.of(config().root().render(ConfigRenderOptions.concise())));
+  }
 }
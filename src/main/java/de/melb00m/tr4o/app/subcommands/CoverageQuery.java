@@ -0,0 +1,96 @@
+package de.melb00m.tr4o.app.subcommands;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.tiles.BoundingBox;
+import de.melb00m.tr4o.tiles.TilesScanner;
+import de.melb00m.tr4o.tiles.TilesScannerResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Coverage-Query subcommand ('--queryRegion' parameter on CLI-options)
+ *
+ * <p>Scans for ortho-scenery and reports the ortho-coverage of a region, without touching the
+ * Transparency4Ortho library.
+ *
+ * @see Transparency4Ortho
+ */
+public class CoverageQuery implements Runnable {
+
+  private static final Logger LOG = LogManager.getLogger(CoverageQuery.class);
+  private static final int MAX_LISTED_TILES = 100;
+  private static final String PARTIAL_SCAN_NOTE =
+      "The scan did not complete, so the coverage only includes the sceneries scanned so far.";
+
+  private final TilesScanner tilesScanner;
+  private final BoundingBox region;
+
+  public CoverageQuery(final Transparency4Ortho command) {
+    this.tilesScanner = new TilesScanner(command);
+    this.region = BoundingBox.parse(command.getQueryRegion());
+  }
+
+  @Override
+  public void run() {
+    final var result = tilesScanner.scanForOrthoScenery();
+    buildReport(result, region).forEach(LOG::info);
+  }
+
+  /**
+   * Builds the coverage-report of a region.
+   *
+   * @param result Result of an ortho-scan
+   * @param region Region to report on
+   * @return Lines of the report
+   */
+  public static List<String> buildReport(final TilesScannerResult result, final BoundingBox region) {
+    final var indexNanos = System.nanoTime();
+    result.countCoveredTiles(BoundingBox.world());
+    LOG.debug("Coverage index built in {} ms", (System.nanoTime() - indexNanos) / 1_000_000);
+    final var startNanos = System.nanoTime();
+    final var packs = result.findOrthoFoldersInRegion(region);
+    final var covered = result.countCoveredTiles(region);
+    final var percentage = result.getCoveragePercentage(region);
+    final var uncovered = result.getUncoveredTiles(region);
+    LOG.debug(
+        "Region queries answered in {} microseconds", (System.nanoTime() - startNanos) / 1000);
+
+    final var report = new ArrayList<String>();
+    if (!result.isComplete()) {
+      report.add(PARTIAL_SCAN_NOTE);
+    }
+    report.add(
+        String.format("Ortho-coverage for region %s (%d tiles):", region, region.getTileCount()));
+    report.add(
+        String.format(
+            "     %d tiles covered (%.1f%%), %d tiles uncovered",
+            covered, percentage, uncovered.size()));
+    report.add(String.format("Ortho-sceneries providing tiles in this region: %d", packs.size()));
+    packs.forEach(pack -> report.add(String.format("     > %s", pack.toAbsolutePath())));
+    if (covered > 0 && covered <= MAX_LISTED_TILES) {
+      report.add("Ortho-sceneries per covered tile:");
+      result.getOrthoCoveredTiles().stream()
+          .filter(region::contains)
+          .sorted()
+          .forEach(
+              tile ->
+                  report.add(
+                      String.format(
+                          "     %s > %s",
+                          tile,
+                          result.getOrthoFoldersForTile(tile).stream()
+                              .map(path -> path.getFileName().toString())
+                              .collect(Collectors.joining(", ")))));
+    }
+    if (!uncovered.isEmpty() && uncovered.size() <= MAX_LISTED_TILES) {
+      report.add(
+          "Uncovered tiles: "
+              + uncovered.stream().map(Object::toString).collect(Collectors.joining(" ")));
+    }
+    return report;
+  }
+}
@@ -0,0 +1,92 @@
+package de.melb00m.tr4o.app.subcommands;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.library.LibraryGenerator;
+import de.melb00m.tr4o.tiles.ScanSnapshot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.FileSystem;
+
+/**
+ * Library-Check subcommand ('--check' parameter on CLI-options)
+ *
+ * <p>Verifies that the Transparency4Ortho library is present and that its {@code library.txt}
+ * still matches the installed ortho-scenery, using the {@link ScanSnapshot} of the last run
+ * instead of scanning again. Nothing is written.
+ *
+ * @see Transparency4Ortho
+ */
+public class LibraryCheck implements Runnable {
+
+  private static final Logger LOG = LogManager.getLogger(LibraryCheck.class);
+
+  private final LibraryGenerator libraryGenerator;
+  private final FileSystem fileSystem;
+  private Result result;
+
+  public LibraryCheck(final Transparency4Ortho command) {
+    this.libraryGenerator = new LibraryGenerator(command);
+    this.fileSystem = command.getFileSystem();
+  }
+
+  @Override
+  public void run() {
+    final var startNanos = System.nanoTime();
+    result = check();
+    LOG.debug("Check completed in {} ms", (System.nanoTime() - startNanos) / 1_000_000);
+    LOG.info("{} (exit code {})", result.message, result.exitCode);
+  }
+
+  /**
+   * Runs the check without reporting its result.
+   *
+   * @return Result of the check
+   */
+  public Result check() {
+    final var missingFiles = libraryGenerator.findMissingLibraryFiles();
+    if (!missingFiles.isEmpty()) {
+      missingFiles.forEach(file -> LOG.debug("Library file is missing: {}", file));
+      return Result.LIBRARY_MISSING;
+    }
+    final var snapshot = ScanSnapshot.load(libraryGenerator.getScanSnapshotFile());
+    if (snapshot.isEmpty()) {
+      LOG.debug("No scan-snapshot found at {}", libraryGenerator.getScanSnapshotFile());
+      return Result.REGENERATION_NEEDED;
+    }
+    final var changes = snapshot.get().findChanges(fileSystem);
+    if (!changes.isEmpty()) {
+      changes.forEach(path -> LOG.debug("Changed since the last run: {}", path));
+      return Result.REGENERATION_NEEDED;
+    }
+    return Result.UP_TO_DATE;
+  }
+
+  /** @return Exit code of the check, see {@link Result} */
+  public int getExitCode() {
+    return result.exitCode;
+  }
+
+  /** Results of the check with their exit codes ({@code 1} is used for errors). */
+  public enum Result {
+    UP_TO_DATE(0, "Transparency4Ortho library is up to date"),
+    LIBRARY_MISSING(2, "Transparency4Ortho library is missing or incomplete"),
+    REGENERATION_NEEDED(3, "Ortho-scenery has changed since the last run, library.txt needs to be regenerated");
+
+    private final int exitCode;
+    private final String message;
+
+    Result(final int exitCode, final String message) {
+      this.exitCode = exitCode;
+      this.message = message;
+    }
+
+    public int getExitCode() {
+      return exitCode;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+  }
+}
@@ -16,15 +16,21 @@ public class LibraryRegeneration implements Runnable {
   private static final Logger LOG = LogManager.getLogger(LibraryRegeneration.class);
 
   private final LibraryGenerator libraryGenerator;
+  private final boolean deltaSync;
 
   public LibraryRegeneration(final Transparency4Ortho command) {
     this.libraryGenerator = new LibraryGenerator(command);
+    this.deltaSync = command.isDeltaSync();
   }
 
   @Override
   public void run() {
     LOG.info("Library re-generation started");
-    libraryGenerator.regenerateLibrary();
+    if (deltaSync) {
+      libraryGenerator.synchronizeLibrary();
+    } else {
+      libraryGenerator.regenerateLibrary();
+    }
     LOG.info("Library re-generation complete");
   }
 }
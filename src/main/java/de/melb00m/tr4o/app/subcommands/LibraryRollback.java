@@ -0,0 +1,32 @@
+package de.melb00m.tr4o.app.subcommands;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.library.LibraryGenerator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Library-Rollback subcommand ('--rollback' parameter on CLI-options)
+ *
+ * @see LibraryGenerator#restoreGeneration(int)
+ * @see Transparency4Ortho
+ */
+public class LibraryRollback implements Runnable {
+
+  private static final Logger LOG = LogManager.getLogger(LibraryRollback.class);
+
+  private final LibraryGenerator libraryGenerator;
+  private final int generation;
+
+  public LibraryRollback(final Transparency4Ortho command) {
+    this.libraryGenerator = new LibraryGenerator(command);
+    this.generation = command.getRollbackGeneration().orElseThrow();
+  }
+
+  @Override
+  public void run() {
+    libraryGenerator.restoreGeneration(generation);
+    LOG.info("Library rollback complete");
+    LOG.info("Re-run without --rollback to add ortho-scenery installed since then.");
+  }
+}
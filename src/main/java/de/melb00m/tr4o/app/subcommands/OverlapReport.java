@@ -0,0 +1,140 @@
+package de.melb00m.tr4o.app.subcommands;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.helper.OutputHelper;
+import de.melb00m.tr4o.tiles.OverlapAnalysis;
+import de.melb00m.tr4o.tiles.TilesScanner;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Overlap-Report subcommand ('--analyzeOverlaps' parameter on CLI-options)
+ *
+ * <p>Scans for ortho-scenery and reports the ortho-sceneries whose tiles are hidden by other
+ * ortho-sceneries of a higher priority in the {@code scenery_packs.ini}, without touching the
+ * Transparency4Ortho library. Optionally writes a list of the {@code scenery_packs.ini}-entries
+ * that disable the packs which are hidden completely.
+ *
+ * @see OverlapAnalysis
+ * @see Transparency4Ortho
+ */
+public class OverlapReport implements Runnable {
+
+  private static final Logger LOG = LogManager.getLogger(OverlapReport.class);
+  private static final int MAX_LISTED_TILES = 20;
+  private static final String DISABLED_ENTRY_FORMAT = "SCENERY_PACK_DISABLED %s/";
+
+  private final Transparency4Ortho command;
+  private final TilesScanner tilesScanner;
+  private final Optional<Path> disableListFile;
+
+  public OverlapReport(final Transparency4Ortho command) {
+    this.command = command;
+    this.tilesScanner = new TilesScanner(command);
+    this.disableListFile = command.getDisableListFile();
+  }
+
+  @Override
+  public void run() {
+    final var result = tilesScanner.scanForOrthoScenery();
+    final var analysis =
+        OverlapAnalysis.analyze(
+            result, tilesScanner.getSceneryPackOrder(), command.getProgressTracker());
+    if (!result.isComplete()) {
+      LOG.warn(
+          "The scan did not complete, so the report only covers the sceneries scanned so far.");
+    }
+    buildReport(analysis).forEach(LOG::info);
+    disableListFile.ifPresent(file -> writeDisableList(analysis, file));
+  }
+
+  private List<String> buildReport(final OverlapAnalysis analysis) {
+    final var report = new ArrayList<String>();
+    if (analysis.getOverlappingTiles().isEmpty()) {
+      report.add("No tile is provided by more than one ortho-scenery.");
+      return report;
+    }
+    report.add(
+        String.format(
+            "%d tiles are provided by more than one ortho-scenery. X-Plane only shows the one that "
+                + "comes first in the scenery_packs.ini, but loads all of them.",
+            analysis.getOverlappingTiles().size()));
+    report.add("Ortho-sceneries with hidden tiles:");
+    var dsfBytes = 0L;
+    var textureBytes = 0L;
+    for (final var shadowed : analysis.getShadowedPacks()) {
+      dsfBytes += shadowed.getDsfBytes();
+      textureBytes += shadowed.getTextureBytes();
+      report.add(
+          String.format(
+              "     > %s: %d of %d tiles hidden%s, costing %s DSF and %s textures",
+              shadowed.getPack().toAbsolutePath(),
+              shadowed.getShadowedTiles().size(),
+              shadowed.getTotalTiles(),
+              shadowed.isFullyShadowed() ? " (completely)" : "",
+              OutputHelper.formatBytes(shadowed.getDsfBytes()),
+              OutputHelper.formatBytes(shadowed.getTextureBytes())));
+      report.add(
+          String.format(
+              "         hidden by: %s",
+              shadowed.getShadowingPacks().stream()
+                  .map(pack -> pack.getFileName().toString())
+                  .collect(Collectors.joining(", "))));
+      if (shadowed.getShadowedTiles().size() <= MAX_LISTED_TILES) {
+        report.add(
+            String.format(
+                "         tiles: %s",
+                shadowed.getShadowedTiles().stream()
+                    .map(Object::toString)
+                    .collect(Collectors.joining(" "))));
+      }
+    }
+    report.add(
+        String.format(
+            "Hidden tiles cost %s of DSF-files and %s of textures in total.",
+            OutputHelper.formatBytes(dsfBytes), OutputHelper.formatBytes(textureBytes)));
+    final var fullyShadowed =
+        analysis.getShadowedPacks().stream()
+            .filter(OverlapAnalysis.ShadowedPack::isFullyShadowed)
+            .count();
+    if (fullyShadowed > 0 && disableListFile.isEmpty()) {
+      report.add(
+          String.format(
+              "%d ortho-sceneries are hidden completely, use --writeDisableList to list the "
+                  + "scenery_packs.ini-entries that disable them.",
+              fullyShadowed));
+    }
+    return report;
+  }
+
+  private void writeDisableList(final OverlapAnalysis analysis, final Path file) {
+    final var xPlanePath = command.getXPlanePath().toAbsolutePath();
+    final var lines =
+        analysis.getShadowedPacks().stream()
+            .filter(OverlapAnalysis.ShadowedPack::isFullyShadowed)
+            .map(shadowed -> shadowed.getPack().toAbsolutePath())
+            .map(pack -> pack.startsWith(xPlanePath) ? xPlanePath.relativize(pack) : pack)
+            .map(pack -> String.format(DISABLED_ENTRY_FORMAT, pack.toString().replace('\\', '/')))
+            .collect(Collectors.toList());
+    try {
+      Files.write(file, lines);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+    LOG.info(
+        "{} scenery_packs.ini-entries for disabling the completely hidden ortho-sceneries were "
+            + "written to {}",
+        lines.size(),
+        file.toAbsolutePath());
+    LOG.info("Replace the according SCENERY_PACK-lines in your scenery_packs.ini with them.");
+  }
+}
@@ -0,0 +1,314 @@
+package de.melb00m.tr4o.app.subcommands;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.library.LibraryGenerator;
+import de.melb00m.tr4o.server.ServerEndpoint;
+import de.melb00m.tr4o.server.ServerProtocol;
+import de.melb00m.tr4o.tiles.BoundingBox;
+import de.melb00m.tr4o.tiles.ScanSnapshot;
+import de.melb00m.tr4o.tiles.TileProvenance;
+import de.melb00m.tr4o.tiles.TilesScanner;
+import de.melb00m.tr4o.tiles.TilesScannerResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Resident-Server subcommand ('--server' parameter on CLI-options)
+ *
+ * <p>Keeps the result of an ortho-scan in memory and answers the requests of the {@link
+ * ServerProtocol} on a loopback-port, so that repeated calls of the CLI neither pay for the JVM
+ * startup nor for a rescan. The scan is only repeated when the {@link ScanSnapshot} taken along
+ * with it shows that the installed scenery has changed.
+ *
+ * <p>Queries and status checks are answered concurrently; generation requests and rescans are
+ * exclusive. Each connection has to send its request within a few seconds, and connections beyond
+ * a fixed number at the same time are turned down, so clients that connect without sending
+ * anything cannot block the server.
+ *
+ * @see Transparency4Ortho
+ */
+public class ResidentServer implements Runnable {
+
+  private static final Logger LOG = LogManager.getLogger(ResidentServer.class);
+  private static final int REQUEST_TIMEOUT_MILLIS = 10_000;
+  private static final int MAX_CONNECTIONS = 16;
+  private static final long IDLE_WORKER_SECONDS = 60;
+  private static final String PARTIAL_SCAN_NOTE =
+      "The scan did not complete, so the library only covers the sceneries scanned so far.";
+
+  private final Transparency4Ortho command;
+  private final LibraryGenerator libraryGenerator;
+  private final TilesScanner tilesScanner;
+  private final Path endpointFile;
+  private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+  /** Both are immutable and only replaced while holding the write-lock of the index */
+  private volatile TilesScannerResult scanResult;
+  private volatile ScanSnapshot scanSnapshot;
+  private volatile boolean running = true;
+
+  public ResidentServer(final Transparency4Ortho command) {
+    this.command = command;
+    this.libraryGenerator = new LibraryGenerator(command);
+    this.tilesScanner = new TilesScanner(command);
+    this.endpointFile =
+        command.getXPlanePath().resolve(command.config().getString("libgen.state.server-file"));
+  }
+
+  @Override
+  public void run() {
+    exclusively(this::rescan);
+    final ExecutorService workers =
+        new ThreadPoolExecutor(
+            0,
+            MAX_CONNECTIONS,
+            IDLE_WORKER_SECONDS,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            runnable -> {
+              final var thread = new Thread(runnable);
+              thread.setPriority(command.getWorkerThreadPriority());
+              return thread;
+            });
+    try (final var serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      final var endpoint =
+          ServerEndpoint.create(serverSocket.getLocalPort(), command.getConfigFingerprint());
+      endpoint.publish(endpointFile);
+      final var shutdownHook = new Thread(() -> endpoint.withdraw(endpointFile));
+      Runtime.getRuntime().addShutdownHook(shutdownHook);
+      LOG.info("Transparency4Ortho server is listening on port {}", endpoint.getPort());
+      try {
+        while (running) {
+          final var socket = serverSocket.accept();
+          try {
+            workers.execute(() -> handleConnection(socket, endpoint, serverSocket));
+          } catch (RejectedExecutionException e) {
+            LOG.warn(
+                "Turned down connection from {}, {} connections are already open",
+                socket.getRemoteSocketAddress(),
+                MAX_CONNECTIONS);
+            socket.close();
+          }
+        }
+      } catch (SocketException e) {
+        if (running) {
+          throw e;
+        }
+      } finally {
+        endpoint.withdraw(endpointFile);
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      }
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    } finally {
+      workers.shutdown();
+    }
+    LOG.info("Transparency4Ortho server stopped");
+  }
+
+  private void handleConnection(
+      final Socket socket, final ServerEndpoint endpoint, final ServerSocket serverSocket) {
+    try (socket) {
+      socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+      final var reader =
+          new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      final var writer =
+          new BufferedWriter(
+              new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      final var greeting = reader.readLine();
+      if (greeting == null
+          || !greeting.startsWith(ServerProtocol.GREETING + " ")
+          || !endpoint.accepts(greeting.substring(ServerProtocol.GREETING.length() + 1))) {
+        LOG.warn("Rejected request with invalid greeting from {}", socket.getRemoteSocketAddress());
+        return;
+      }
+      final var request = reader.readLine();
+      if (request == null) {
+        return;
+      }
+      final Consumer<String> output =
+          line -> {
+            try {
+              writer.write(ServerProtocol.OUTPUT_PREFIX + line);
+              writer.newLine();
+            } catch (IOException e) {
+              throw Exceptions.unrecoverable(e);
+            }
+          };
+      int exitCode;
+      try {
+        exitCode = handleRequest(request, output);
+      } catch (RuntimeException e) {
+        LOG.error("Request '{}' failed: {}", request, e.getMessage(), e);
+        output.accept("ERROR: " + e.getMessage());
+        exitCode = 1;
+      }
+      writer.write(ServerProtocol.EXIT_PREFIX + exitCode);
+      writer.newLine();
+      writer.flush();
+      if (ServerProtocol.SHUTDOWN.equals(request)) {
+        running = false;
+        serverSocket.close();
+      }
+    } catch (IOException e) {
+      LOG.debug("Connection to client failed", e);
+    }
+  }
+
+  private int handleRequest(final String request, final Consumer<String> output) {
+    LOG.debug("Handling request: {}", request);
+    final var parts = request.split(" ", 2);
+    final var argument = parts.length > 1 ? parts[1].trim() : "";
+    switch (parts[0]) {
+      case ServerProtocol.STATUS:
+        // the library.txt and the snapshot are not checked while a generation replaces them
+        indexLock.readLock().lock();
+        try {
+          final var result = new LibraryCheck(command).check();
+          output.accept(result.getMessage());
+          return result.getExitCode();
+        } finally {
+          indexLock.readLock().unlock();
+        }
+      case ServerProtocol.QUERY:
+        final var region = BoundingBox.parse(argument);
+        withFreshIndex(index -> CoverageQuery.buildReport(index, region).forEach(output));
+        return 0;
+      case ServerProtocol.GENERATE:
+        generate(ServerProtocol.REMOVE_EXISTING.equals(argument), output);
+        return 0;
+      case ServerProtocol.RESCAN:
+        exclusively(
+            () -> {
+              rescan();
+              if (!scanResult.isComplete()) {
+                output.accept(PARTIAL_SCAN_NOTE);
+              }
+              output.accept(
+                  String.format(
+                      "Rescan found %d ortho-covered tiles",
+                      scanResult.getOrthoCoveredTiles().size()));
+            });
+        return 0;
+      case ServerProtocol.SHUTDOWN:
+        output.accept("Server is shutting down");
+        return 0;
+      default:
+        output.accept("Unknown request: " + request);
+        return 1;
+    }
+  }
+
+  private void generate(final boolean removeExistingEntries, final Consumer<String> output) {
+    exclusively(
+        () -> {
+          if (libraryGenerator.validateOrCreateLibrary()) {
+            output.accept("Transparency4Ortho library has been created");
+          }
+          if (isIndexStale()) {
+            rescan();
+          }
+          final var tiles = scanResult.getOrthoCoveredTiles();
+          final var orthoFolders = scanResult.getOrthoFolderToDsfMap().keySet();
+          // only a complete scan tells for sure which ortho-sceneries are gone
+          libraryGenerator.generateLibraryTxt(
+              TileProvenance.of(scanResult),
+              scanResult.isComplete() ? tilesScanner.getScannedFolders() : orthoFolders,
+              removeExistingEntries);
+          if (scanResult.isComplete()) {
+            ScanSnapshot.capture(
+                    List.of(
+                        tilesScanner.getSceneryPacksFile(),
+                        libraryGenerator.getLibraryDefinitionFile()),
+                    tilesScanner.getScannedFolders(),
+                    orthoFolders)
+                .save(libraryGenerator.getScanSnapshotFile());
+          } else {
+            // a partial library.txt is never reported as up to date by '--check'
+            deleteScanSnapshot();
+            output.accept(PARTIAL_SCAN_NOTE);
+          }
+          output.accept(
+              String.format(
+                  "Library generated for %d tiles from %d ortho-sceneries",
+                  tiles.size(), orthoFolders.size()));
+        });
+  }
+
+  private void deleteScanSnapshot() {
+    try {
+      Files.deleteIfExists(libraryGenerator.getScanSnapshotFile());
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  private void withFreshIndex(final Consumer<TilesScannerResult> action) {
+    indexLock.readLock().lock();
+    try {
+      if (!isIndexStale()) {
+        action.accept(scanResult);
+        return;
+      }
+    } finally {
+      indexLock.readLock().unlock();
+    }
+    exclusively(
+        () -> {
+          if (isIndexStale()) {
+            rescan();
+          }
+          action.accept(scanResult);
+        });
+  }
+
+  private void exclusively(final Runnable action) {
+    indexLock.writeLock().lock();
+    try {
+      action.run();
+    } finally {
+      indexLock.writeLock().unlock();
+    }
+  }
+
+  private boolean isIndexStale() {
+    return !scanSnapshot.findChanges(command.getFileSystem()).isEmpty();
+  }
+
+  private void rescan() {
+    final var startNanos = System.nanoTime();
+    scanResult = tilesScanner.scanForOrthoScenery();
+    scanSnapshot =
+        ScanSnapshot.capture(
+            List.of(tilesScanner.getSceneryPacksFile()),
+            tilesScanner.getScannedFolders(),
+            scanResult.getOrthoFolderToDsfMap().keySet());
+    LOG.info(
+        "Scanned {} ortho-covered tiles in {} ms",
+        scanResult.getOrthoCoveredTiles().size(),
+        (System.nanoTime() - startNanos) / 1_000_000);
+  }
+}
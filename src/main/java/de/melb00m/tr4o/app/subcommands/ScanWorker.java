@@ -0,0 +1,30 @@
+package de.melb00m.tr4o.app.subcommands;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.tiles.DistributedScan;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Scan-Worker subcommand ('--scanShard' parameter on CLI-options, started by the coordinator of a
+ * distributed scan)
+ *
+ * @see DistributedScan
+ * @see Transparency4Ortho
+ */
+public class ScanWorker implements Runnable {
+
+  private static final Logger LOG = LogManager.getLogger(ScanWorker.class);
+
+  private final Transparency4Ortho command;
+
+  public ScanWorker(final Transparency4Ortho command) {
+    this.command = command;
+  }
+
+  @Override
+  public void run() {
+    final var complete = DistributedScan.serveShard(command, System.in, System.out);
+    LOG.info("Scan of the shard {}", complete ? "complete" : "incomplete");
+  }
+}
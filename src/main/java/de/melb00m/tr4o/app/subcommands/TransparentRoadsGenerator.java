@@ -1,14 +1,19 @@
 package de.melb00m.tr4o.app.subcommands;
 
 import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.exceptions.Exceptions;
 import de.melb00m.tr4o.library.LibraryGenerator;
+import de.melb00m.tr4o.tiles.ScanSnapshot;
+import de.melb00m.tr4o.tiles.TileCoverageGrid;
+import de.melb00m.tr4o.tiles.TileProvenance;
 import de.melb00m.tr4o.tiles.TilesScanner;
-import de.melb00m.tr4o.tiles.TilesScannerResult;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jline.utils.Log;
 
-import java.util.TreeSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -30,6 +35,8 @@ public class TransparentRoadsGenerator implements Runnable {
   private final TilesScanner tilesScanner;
   private final Transparency4Ortho command;
   private int currentStep = 0;
+  private String currentStepName;
+  private long currentStepStart;
 
   public TransparentRoadsGenerator(final Transparency4Ortho command) {
     this.command = command;
@@ -43,37 +50,130 @@ public class TransparentRoadsGenerator implements Runnable {
     final var newLibraryCreated = libraryGenerator.validateOrCreateLibrary();
 
     nextStep("Scanning for Ortho-Scenery");
-    final var scannerResult = tilesScanner.scanForOrthoScenery();
-    if (scannerResult.getOrthoCoveredTiles().isEmpty()) {
+    final var coverage = new TileCoverageGrid();
+    final var provenance = new TileProvenance();
+    final var complete =
+        tilesScanner.streamOrthoScenery(
+            (orthoFolder, dsfFile, tile) -> {
+              coverage.tileCovered(orthoFolder, dsfFile, tile);
+              provenance.tileCovered(orthoFolder, dsfFile, tile);
+            },
+            tilesScanner.openCheckpoint());
+    if (coverage.getCoveredTileCount() == 0) {
       LOG.info("No ortho-scenery covered tiles were detected.");
+      if (!complete) {
+        LOG.info(
+            "The scan did not complete, run again {}to continue it.",
+            command.getScanWorkers().isPresent() ? "" : "with --resume ");
+      }
+      // tiles recorded for ortho-sceneries that are gone by now are still dropped from the library
+      final var regenerate = complete && !command.isRemoveExistingEntries();
+      if (regenerate) {
+        nextStep("Generating Library-File");
+        libraryGenerator.generateLibraryTxt(provenance, tilesScanner.getScannedFolders(), false);
+      }
+      saveScanSnapshot(coverage, regenerate);
+      finishStep();
       return;
     }
 
     nextStep("Generating Library-File");
-    generateLibraryDefinition(scannerResult);
+    generateLibraryDefinition(coverage, provenance, complete);
 
     nextStep("Final Words");
     printFinalWords(newLibraryCreated);
+    finishStep();
   }
 
   private void nextStep(final String name) {
+    finishStep();
     currentStep += 1;
+    currentStepName = name;
+    currentStepStart = System.nanoTime();
+    command.getEventStream().emit("phase-started", "step", currentStep, "name", name);
     LOG.info(System.lineSeparator());
     var builder = new StringBuilder(String.format("__________:[ STEP %d:  %s ]:", currentStep, name));
     while (builder.length() < 100) builder.append("_");
     LOG.info(builder::toString);
   }
 
-  private void generateLibraryDefinition(final TilesScannerResult scannerResult) {
+  private void finishStep() {
+    if (currentStepName == null) {
+      return;
+    }
+    command
+        .getEventStream()
+        .emit(
+            "phase-finished",
+            "step",
+            currentStep,
+            "name",
+            currentStepName,
+            "millis",
+            (System.nanoTime() - currentStepStart) / 1_000_000);
+    currentStepName = null;
+  }
+
+  private void generateLibraryDefinition(
+      final TileCoverageGrid coverage, final TileProvenance provenance, final boolean complete) {
     LOG.info(
         "The following ortho-sceneries were detected and will be used in the Transparency4Ortho library: ");
     var counter = 0;
-    for (var scenery : new TreeSet<>(scannerResult.getOrthoFolderToDsfMap().keySet())) {
-      LOG.info(String.format("     [%03d] > %s", counter++, scenery.toAbsolutePath()));
+    for (var scenery : coverage.getOrthoFolders()) {
+      final var index = counter++;
+      LOG.info(() -> String.format("     [%03d] > %s", index, scenery.toAbsolutePath()));
     }
-    LOG.info("These sceneries cover {} tiles in total.", scannerResult.getOrthoFolderToDsfMap().size());
+    LOG.info("These sceneries cover {} tiles in total.", coverage.getCoveredTileCount());
+    LOG.debug("{} DSF-files were found in these sceneries", coverage.getDsfFileCount());
+    // only a complete scan tells for sure which ortho-sceneries are gone
     libraryGenerator.generateLibraryTxt(
-        scannerResult.getOrthoCoveredTiles(), command.isRemoveExistingEntries());
+        provenance,
+        complete ? tilesScanner.getScannedFolders() : coverage.getOrthoFolders(),
+        command.isRemoveExistingEntries());
+    command
+        .getEventStream()
+        .emit(
+            "library-generated",
+            "path",
+            libraryGenerator.getLibraryDefinitionFile().toAbsolutePath(),
+            "tiles",
+            coverage.getCoveredTileCount(),
+            "complete",
+            complete);
+    if (!complete) {
+      LOG.warn(
+          "The scan did not complete, so the library.txt only covers the sceneries scanned so far.");
+      if (command.getScanWorkers().isEmpty()) {
+        LOG.warn("Run again with --resume to continue the scan where it stopped.");
+      }
+    }
+    saveScanSnapshot(coverage, complete);
+  }
+
+  /**
+   * Remembers what the library.txt is based on, so '--check' can verify it without a rescan. A
+   * library.txt that was not generated from a complete scan is never reported as up to date, so the
+   * snapshot is removed instead.
+   *
+   * @param coverage Coverage found by the scan
+   * @param generatedFromCompleteScan Whether the library.txt was generated from a complete scan
+   */
+  private void saveScanSnapshot(
+      final TileCoverageGrid coverage, final boolean generatedFromCompleteScan) {
+    if (!generatedFromCompleteScan) {
+      try {
+        Files.deleteIfExists(libraryGenerator.getScanSnapshotFile());
+      } catch (IOException e) {
+        throw Exceptions.unrecoverable(e);
+      }
+      return;
+    }
+    ScanSnapshot.capture(
+            List.of(
+                tilesScanner.getSceneryPacksFile(), libraryGenerator.getLibraryDefinitionFile()),
+            tilesScanner.getScannedFolders(),
+            coverage.getOrthoFolders())
+        .save(libraryGenerator.getScanSnapshotFile());
   }
 
   private void printFinalWords(boolean newLibraryCreated) {
@@ -1,16 +1,21 @@
 package de.melb00m.tr4o.helper;
 
 import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.monitoring.FileOperationEvent;
+import de.melb00m.tr4o.progress.ProgressTracker;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.nio.file.FileSystemException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -26,14 +31,25 @@ public final class FileHelper {
   public static final Set<FileVisitOption> FOLLOW_SYMLINKS =
       Collections.singleton(FileVisitOption.FOLLOW_LINKS);
   private static final Logger LOG = LogManager.getLogger(FileHelper.class);
+  private static final int HASH_BUFFER_SIZE = 64 * 1024;
 
   private FileHelper() {}
 
   public static void copyRecursively(
-      final Path source, final Path target, final Path... exclusions) {
+      final Path source,
+      final Path target,
+      final ProgressTracker progress,
+      final Path... exclusions) {
     final var exclusionSet = Set.of(exclusions);
     try (var stream = Files.walk(source)) {
-      for (final var fileToCopy : stream.filter(Files::isRegularFile).collect(Collectors.toSet())) {
+      final var filesToCopy = stream.filter(Files::isRegularFile).collect(Collectors.toSet());
+      progress.addEstimate(
+          ProgressTracker.Counter.BYTES_COPIED,
+          filesToCopy.stream()
+              .filter(file -> !exclusionSet.contains(file))
+              .mapToLong(FileHelper::size)
+              .sum());
+      for (final var fileToCopy : filesToCopy) {
         if (exclusionSet.contains(fileToCopy)) {
           LOG.trace("Skipping copy of file as it is excluded: {}", fileToCopy);
           continue;
@@ -46,14 +62,46 @@ public final class FileHelper {
               targetPath);
           continue;
         }
+        final var event = new FileOperationEvent();
+        event.begin();
         Files.createDirectories(targetPath.getParent());
         Files.copy(fileToCopy, targetPath);
+        final var bytes = Files.size(targetPath);
+        progress.add(ProgressTracker.Counter.BYTES_COPIED, bytes);
+        commitFileOperation(event, FileOperationEvent.COPY, targetPath, bytes);
       }
     } catch (IOException ex) {
       throw Exceptions.unrecoverable(ex);
     }
   }
 
+  /**
+   * Creates a hard-link to an existing file, or copies it (including its attributes) if the
+   * file-system does not support hard-links.
+   *
+   * @param existing Existing file
+   * @param link Location of the new link
+   */
+  public static void linkOrCopy(final Path existing, final Path link) {
+    final var event = new FileOperationEvent();
+    event.begin();
+    try {
+      Files.createDirectories(link.getParent());
+      try {
+        Files.createLink(link, existing);
+        commitFileOperation(event, FileOperationEvent.LINK, link, 0);
+      } catch (UnsupportedOperationException | FileSystemException e) {
+        LOG.trace("Hard-link not possible, copying {} to {}", existing, link);
+        Files.copy(existing, link, StandardCopyOption.COPY_ATTRIBUTES);
+        if (event.shouldCommit()) {
+          commitFileOperation(event, FileOperationEvent.COPY, link, Files.size(link));
+        }
+      }
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
   public static String removeFileExtension(final String path) {
     var idx = path.lastIndexOf('.');
     return idx > 0 ? path.substring(0, idx) : path;
@@ -74,23 +122,77 @@ public final class FileHelper {
   }
 
   private static void deleteIfExists(final Path path) {
+    final var event = new FileOperationEvent();
+    event.begin();
     try {
-      Files.deleteIfExists(path);
+      // the size is only needed for the event, so avoid the extra file-access if it is disabled
+      final var bytes = event.isEnabled() && Files.isRegularFile(path) ? Files.size(path) : 0;
+      if (Files.deleteIfExists(path)) {
+        commitFileOperation(event, FileOperationEvent.DELETE, path, bytes);
+      }
     } catch (IOException e) {
       throw Exceptions.unrecoverable(e);
     }
   }
 
-  public static String deepMD5Hash(final Path source) {
+  public static String deepMD5Hash(final Path source, final ProgressTracker progress) {
+    final List<Path> files;
     try (final var stream = Files.walk(source)) {
-      var digest = MessageDigest.getInstance("MD5");
-      stream.filter(Files::isRegularFile).forEachOrdered(file -> digest.update(readAllBytes(file)));
+      files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+    progress.addEstimate(
+        ProgressTracker.Counter.BYTES_HASHED, files.stream().mapToLong(FileHelper::size).sum());
+    try {
+      final var digest = MessageDigest.getInstance("MD5");
+      final var buffer = new byte[HASH_BUFFER_SIZE];
+      for (final var file : files) {
+        final var event = new FileOperationEvent();
+        event.begin();
+        var bytes = 0L;
+        try (final var in = Files.newInputStream(file)) {
+          int read;
+          while ((read = in.read(buffer)) > 0) {
+            digest.update(buffer, 0, read);
+            progress.add(ProgressTracker.Counter.BYTES_HASHED, read);
+            bytes += read;
+          }
+        }
+        commitFileOperation(event, FileOperationEvent.HASH, file, bytes);
+      }
       return OutputHelper.bytesToHex(digest.digest());
     } catch (IOException | NoSuchAlgorithmException e) {
       throw Exceptions.unrecoverable(e);
     }
   }
 
+  /**
+   * Completes a {@link FileOperationEvent} started by the caller, if it is recorded.
+   *
+   * @param event Started event
+   * @param operation Operation that was performed
+   * @param path File the operation was performed on
+   * @param bytes Bytes processed by the operation
+   */
+  public static void commitFileOperation(
+      final FileOperationEvent event, final String operation, final Path path, final long bytes) {
+    if (event.shouldCommit()) {
+      event.operation = operation;
+      event.path = path.toString();
+      event.bytes = bytes;
+      event.commit();
+    }
+  }
+
+  public static long size(final Path file) {
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
   public static byte[] readAllBytes(final Path file) {
     try {
       return Files.readAllBytes(file);
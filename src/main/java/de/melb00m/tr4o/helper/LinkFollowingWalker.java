@@ -0,0 +1,178 @@
+package de.melb00m.tr4o.helper;
+
+import de.melb00m.tr4o.exceptions.Exceptions;
+import org.apache.commons.collections4.MultiMapUtils;
+import org.apache.commons.collections4.MultiValuedMap;
+import org.apache.commons.collections4.multimap.HashSetValuedHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Walks file-trees following symbolic links (and junctions), visiting every physical file and
+ * directory only once.
+ *
+ * <p>Files and directories are identified by their {@link BasicFileAttributes#fileKey()} (or their
+ * real path, on file-systems without file-keys). Whenever one is reached again through another
+ * path - a link, a second walk-root pointing to the same content, or a link-cycle - it is skipped
+ * and the path is recorded as an alias of the path it was first visited through. The identities
+ * are kept across all walks of the same instance.
+ *
+ * <p>File-systems without file-keys include the default one on Windows, where {@link
+ * Path#toRealPath} queries every element of the path. So the real path of an entry is derived from
+ * the real path of its directory instead, which is kept for all directories seen so far, and only
+ * entries that are links (or junctions) themselves are resolved by {@link Path#toRealPath}. This
+ * costs one attribute-read per entry.
+ */
+public final class LinkFollowingWalker {
+
+  private static final Logger LOG = LogManager.getLogger(LinkFollowingWalker.class);
+
+  private final Map<Object, Path> visited = new HashMap<>();
+  private final Map<Path, Path> realDirectories = new HashMap<>();
+  private final MultiValuedMap<Path, Path> aliases = new HashSetValuedHashMap<>();
+
+  /**
+   * Walks the tree below the given root (including the root itself).
+   *
+   * @param root Root of the walk
+   * @param descendInto Decides for every directory (including the root) whether its content is
+   *     walked
+   * @param visitor Receives every file and directory that is visited
+   */
+  public void walk(
+      final Path root, final Predicate<Path> descendInto, final Consumer<Path> visitor) {
+    try {
+      Files.walkFileTree(
+          root,
+          FileHelper.FOLLOW_SYMLINKS,
+          Integer.MAX_VALUE,
+          new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                final Path dir, final BasicFileAttributes attrs) {
+              if (!firstVisit(dir, attrs)) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+              visitor.accept(dir);
+              return descendInto.test(dir)
+                  ? FileVisitResult.CONTINUE
+                  : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+              if (firstVisit(file, attrs)) {
+                visitor.accept(file);
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+              if (exc instanceof FileSystemLoopException) {
+                LOG.debug("Link-cycle detected at {}", file);
+                recordAlias(firstPathOf(file), file);
+              } else {
+                LOG.warn("Skipping unreadable path {} ({})", file, exc.toString());
+              }
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /**
+   * Registers a path that was reached without walking, e.g. by a direct lookup.
+   *
+   * @param path Path that was reached
+   * @param attrs Attributes of the path (following links)
+   * @return {@code true} if the path has not been visited before, {@code false} if it is recorded
+   *     as an alias
+   */
+  public boolean visit(final Path path, final BasicFileAttributes attrs) {
+    return firstVisit(path, attrs);
+  }
+
+  private boolean firstVisit(final Path path, final BasicFileAttributes attrs) {
+    final var key = identityOf(path, attrs);
+    final var firstPath = visited.putIfAbsent(key, path);
+    if (firstPath == null) {
+      return true;
+    }
+    recordAlias(firstPath, path);
+    return false;
+  }
+
+  private void recordAlias(final Path firstPath, final Path alias) {
+    LOG.trace("{} is an alias of {}", alias, firstPath);
+    aliases.put(firstPath, alias);
+  }
+
+  private Path firstPathOf(final Path path) {
+    try {
+      final var attrs = Files.readAttributes(path, BasicFileAttributes.class);
+      return visited.getOrDefault(identityOf(path, attrs), path);
+    } catch (IOException e) {
+      return path;
+    }
+  }
+
+  private Object identityOf(final Path path, final BasicFileAttributes attrs) {
+    if (attrs.fileKey() != null) {
+      return attrs.fileKey();
+    }
+    final var realPath = realPathOf(path);
+    if (attrs.isDirectory()) {
+      realDirectories.put(path, realPath);
+    }
+    return realPath;
+  }
+
+  private Path realPathOf(final Path path) {
+    final var parent = path.getParent();
+    final var name = path.getFileName() == null ? "" : path.getFileName().toString();
+    try {
+      final var attrs =
+          Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+      if (parent == null
+          || attrs.isSymbolicLink()
+          || attrs.isOther()
+          || name.equals(".")
+          || name.equals("..")) {
+        return path.toRealPath();
+      }
+      return realDirectoryOf(parent).resolve(name);
+    } catch (IOException e) {
+      return path.toAbsolutePath().normalize();
+    }
+  }
+
+  private Path realDirectoryOf(final Path dir) {
+    var realDir = realDirectories.get(dir);
+    if (realDir == null) {
+      realDir = realPathOf(dir);
+      realDirectories.put(dir, realDir);
+    }
+    return realDir;
+  }
+
+  /** @return Alias-paths that were skipped, mapped against the path they were visited through */
+  public MultiValuedMap<Path, Path> getAliases() {
+    return MultiMapUtils.unmodifiableMultiValuedMap(aliases);
+  }
+}
@@ -1,14 +1,14 @@
 package de.melb00m.tr4o.helper;
 
 import de.melb00m.tr4o.app.Transparency4Ortho;
-import me.tongfei.progressbar.ProgressBar;
+import de.melb00m.tr4o.progress.ProgressDisplay;
+import de.melb00m.tr4o.progress.ProgressTracker;
 import me.tongfei.progressbar.ProgressBarBuilder;
 import me.tongfei.progressbar.ProgressBarStyle;
 import org.apache.logging.log4j.Level;
 
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 /**
  * Helpers for handling input and output for the command line.
@@ -19,21 +19,52 @@ public final class OutputHelper {
 
   private OutputHelper() {}
 
-  public static <T> Stream<T> maybeShowWithProgressBar(
+  /**
+   * Shows a progress-bar for the given counter, unless the console is set to a log-level that is
+   * more detailed than the given threshold (where the bar would interfere with the log output) or
+   * the console is used for the event-stream.
+   *
+   * @param taskName Name of the task shown with the bar
+   * @param tracker Tracker holding the counter
+   * @param counter Counter to display
+   * @param threshold Most detailed console log-level for which the bar is still shown
+   * @param command Command holding the console log-level
+   * @return Display, which must be closed when the task is done
+   */
+  public static ProgressDisplay maybeShowProgress(
       final String taskName,
-      final Stream<T> stream,
+      final ProgressTracker tracker,
+      final ProgressTracker.Counter counter,
       final Level threshold,
       final Transparency4Ortho command) {
-    if (command.getConsoleLogLevel().isMoreSpecificThan(threshold)) {
-      return ProgressBar.wrap(stream, getProgressBarBuilder().setTaskName(taskName));
+    if (!command.isConsoleReserved()
+        && command.getConsoleLogLevel().isMoreSpecificThan(threshold)) {
+      return ProgressDisplay.open(taskName, tracker, counter);
     }
-    return stream;
+    return ProgressDisplay.none();
   }
 
   public static ProgressBarBuilder getProgressBarBuilder() {
     return new ProgressBarBuilder().setStyle(ProgressBarStyle.ASCII).setUpdateIntervalMillis(250);
   }
 
+  /**
+   * Formats a number of bytes for display.
+   *
+   * @param bytes Number of bytes
+   * @return Formatted size, e.g. {@code 12.3 MB}
+   */
+  public static String formatBytes(final long bytes) {
+    final var units = new String[] {"B", "KB", "MB", "GB", "TB"};
+    var value = (double) bytes;
+    var unit = 0;
+    while (value >= 1024 && unit < units.length - 1) {
+      value /= 1024;
+      unit++;
+    }
+    return unit == 0 ? String.format("%d B", bytes) : String.format("%.1f %s", value, units[unit]);
+  }
+
   public static String bytesToHex(final byte[] bytes) {
     return IntStream.range(0, bytes.length)
         .map(idx -> bytes[idx] & 0xff)
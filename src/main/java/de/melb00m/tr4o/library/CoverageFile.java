@@ -0,0 +1,105 @@
+package de.melb00m.tr4o.library;
+
+import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.misc.Verify;
+import de.melb00m.tr4o.tiles.Tile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Binary export of the tiles defined in the {@code library.txt}, for plugins and scripts that need
+ * to know at runtime whether a tile has transparent roads, without parsing the {@code library.txt}.
+ *
+ * <p>The file is meant to be memory-mapped: after a fixed header of 16 bytes follows one byte per
+ * tile of the globe, so the status of a tile is a single load at a fixed offset. All numbers are
+ * little-endian:
+ *
+ * <pre>
+ * offset  size    content
+ * 0       4       magic "T4OC"
+ * 4       4       format-version (1)
+ * 8       4       number of tiles (64800)
+ * 12      4       number of library-profiles (n)
+ * 16      64800   status per tile at index (latitude + 90) * 360 + (longitude + 180):
+ *                 0 = not covered, 1..n = covered, using the profile with this number
+ * 64816   ...     names of the profiles 1..n, each as one length-byte followed by UTF-8
+ * </pre>
+ *
+ * <p>Profile 1 is always the default profile. The file is replaced atomically, so a consumer that
+ * has mapped it keeps reading the previous version until it maps the file again.
+ */
+final class CoverageFile {
+
+  private static final byte[] MAGIC = "T4OC".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int MAX_UNSIGNED_BYTE = 255;
+
+  private final List<String> profileNames;
+  private final byte[] statusPerTile = new byte[Tile.GRID_SIZE];
+
+  /** @param profileNames Names of the library-profiles, starting with the default profile */
+  CoverageFile(final List<String> profileNames) {
+    Verify.withErrorMessage(
+            "Too many library profiles for the coverage-file: %d", profileNames.size())
+        .argument(profileNames.size() <= MAX_UNSIGNED_BYTE);
+    profileNames.forEach(
+        name ->
+            Verify.withErrorMessage("Library profile name too long for the coverage-file: %s", name)
+                .argument(name.getBytes(StandardCharsets.UTF_8).length <= MAX_UNSIGNED_BYTE));
+    this.profileNames = List.copyOf(profileNames);
+  }
+
+  /**
+   * Marks the tiles of a region as covered. Tiles outside of the globe are ignored.
+   *
+   * @param profileIndex Index of the profile used for the region (0 for the default profile)
+   * @param west Western-most longitude of the region (inclusive)
+   * @param south Southern-most latitude of the region (inclusive)
+   * @param east Eastern-most longitude of the region (inclusive)
+   * @param north Northern-most latitude of the region (inclusive)
+   */
+  void cover(
+      final int profileIndex, final int west, final int south, final int east, final int north) {
+    for (var latitude = Math.max(south, -90); latitude <= Math.min(north, 89); latitude++) {
+      for (var longitude = Math.max(west, -180); longitude <= Math.min(east, 179); longitude++) {
+        statusPerTile[new Tile(latitude, longitude).toGridIndex()] = (byte) (profileIndex + 1);
+      }
+    }
+  }
+
+  /**
+   * Writes the coverage to the given file, replacing it atomically.
+   *
+   * @param file Coverage-file
+   */
+  void save(final Path file) {
+    final var names =
+        profileNames.stream()
+            .map(name -> name.getBytes(StandardCharsets.UTF_8))
+            .collect(Collectors.toList());
+    final var size =
+        HEADER_SIZE + statusPerTile.length + names.stream().mapToInt(name -> name.length + 1).sum();
+    final var buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(MAGIC).putInt(VERSION).putInt(statusPerTile.length).putInt(names.size());
+    buffer.put(statusPerTile);
+    names.forEach(name -> buffer.put((byte) name.length).put(name));
+    final var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(file.getParent());
+      Files.write(tempFile, buffer.array());
+      Files.move(
+          tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+}
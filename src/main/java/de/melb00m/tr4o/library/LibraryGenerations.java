@@ -0,0 +1,310 @@
+package de.melb00m.tr4o.library;
+
+import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.helper.FileHelper;
+import de.melb00m.tr4o.progress.ProgressTracker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Numbered snapshots ("generations") of the Transparency4Ortho library, kept in the backup-folder
+ * so that a broken library can be rolled back without creating it again.
+ *
+ * <p>A generation mirrors the library folder together with the sync-manifest that belongs to it.
+ * Files are hard-linked between the library and its generations, so a generation only takes up the
+ * space of the files that no longer exist in any other generation or in the library itself. This
+ * works because the library-files are never changed in place, but always replaced by new files.
+ * The {@code library.txt} is the exception, as it may be edited manually, so it is copied instead.
+ *
+ * <p>A generation is first assembled in a temporary folder and then renamed, so only complete
+ * generations are ever listed. If the library did not change since the newest generation, no new
+ * generation is recorded.
+ */
+class LibraryGenerations {
+
+  private static final Logger LOG = LogManager.getLogger(LibraryGenerations.class);
+  private static final String GENERATION_FORMAT = "generation-%d";
+  private static final Pattern GENERATION_PATTERN = Pattern.compile("generation-(?<number>\\d+)");
+  private static final String LIBRARY_FOLDER = "library";
+  private static final String MANIFEST_FILE = "library-sync.manifest";
+
+  private final Path folder;
+  private final Path libraryFolder;
+  private final Path libraryDefinitionFile;
+  private final Path syncManifestFile;
+  private final int keepGenerations;
+  private final Duration maxAge;
+  private final ProgressTracker progress;
+
+  /**
+   * @param folder Folder holding the generations
+   * @param libraryFolder Folder of the library
+   * @param libraryDefinitionFile The {@code library.txt} of the library, which is copied
+   * @param syncManifestFile Sync-manifest of the library
+   * @param keepGenerations Maximum number of generations to keep
+   * @param maxAge Generations older than this are removed (the newest one is always kept)
+   * @param progress Tracker the file-operations are reported to
+   */
+  LibraryGenerations(
+      final Path folder,
+      final Path libraryFolder,
+      final Path libraryDefinitionFile,
+      final Path syncManifestFile,
+      final int keepGenerations,
+      final Duration maxAge,
+      final ProgressTracker progress) {
+    this.folder = folder;
+    this.libraryFolder = libraryFolder;
+    this.libraryDefinitionFile = libraryDefinitionFile;
+    this.syncManifestFile = syncManifestFile;
+    this.keepGenerations = keepGenerations;
+    this.maxAge = maxAge;
+    this.progress = progress;
+  }
+
+  /** @return Folders of the existing generations, mapped against their number (ascending) */
+  TreeMap<Integer, Path> list() {
+    final var generations = new TreeMap<Integer, Path>();
+    if (!Files.isDirectory(folder)) {
+      return generations;
+    }
+    try (final var stream = Files.list(folder)) {
+      stream.forEach(
+          dir -> {
+            final var matcher = GENERATION_PATTERN.matcher(dir.getFileName().toString());
+            if (matcher.matches() && Files.isDirectory(dir)) {
+              generations.put(Integer.parseInt(matcher.group("number")), dir);
+            }
+          });
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+    return generations;
+  }
+
+  /**
+   * Records the current state of the library as a new generation, unless it is already recorded
+   * as the newest one, and removes the generations that exceed the retention afterwards.
+   *
+   * @return Number of the generation holding the current state, or empty if there is no library
+   */
+  Optional<Integer> record() {
+    return record(this::matchesLibrary);
+  }
+
+  /**
+   * Records the current state of the library like {@link #record()}, after nothing but its {@code
+   * library.txt} and the files generated along with it were replaced. All other changes of the
+   * library come with a new sync-manifest and are recorded right away, so the library is taken as
+   * unchanged if the newest generation holds the same {@code library.txt} and sync-manifest. This
+   * spares walking the library and the generation, which {@link #record()} does to compare them.
+   *
+   * @return Number of the generation holding the current state, or empty if there is no library
+   */
+  Optional<Integer> recordDefinition() {
+    return record(this::matchesDefinition);
+  }
+
+  private Optional<Integer> record(final Predicate<Path> matchesLibrary) {
+    if (!Files.isDirectory(libraryFolder)) {
+      return Optional.empty();
+    }
+    final var generations = list();
+    if (!generations.isEmpty() && matchesLibrary.test(generations.lastEntry().getValue())) {
+      LOG.debug("Library is unchanged since generation {}", generations.lastKey());
+      return Optional.of(generations.lastKey());
+    }
+    final var number = generations.isEmpty() ? 1 : generations.lastKey() + 1;
+    final var generation = folder.resolve(String.format(GENERATION_FORMAT, number));
+    final var incomplete = generation.resolveSibling(generation.getFileName() + ".tmp");
+    FileHelper.deleteRecursively(incomplete);
+    try {
+      mirror(libraryFolder, incomplete.resolve(LIBRARY_FOLDER));
+      if (Files.exists(syncManifestFile)) {
+        FileHelper.linkOrCopy(syncManifestFile, incomplete.resolve(MANIFEST_FILE));
+      }
+      Files.move(incomplete, generation, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      FileHelper.deleteRecursively(incomplete);
+      throw Exceptions.unrecoverable(e);
+    }
+    LOG.debug("Recorded library generation {} at {}", number, generation);
+    generations.put(number, generation);
+    applyRetention(generations);
+    return Optional.of(number);
+  }
+
+  /**
+   * Determines the generation holding the current state of the library.
+   *
+   * @return Number of the newest generation matching the library, or empty if none does
+   */
+  Optional<Integer> findCurrent() {
+    return list().descendingMap().entrySet().stream()
+        .filter(entry -> matchesLibrary(entry.getValue()))
+        .map(Map.Entry::getKey)
+        .findFirst();
+  }
+
+  /**
+   * Assembles the library of a generation in a new folder.
+   *
+   * @param generation Folder of the generation
+   * @param target Folder to assemble the library in (must not exist)
+   * @return Sync-manifest of the generation, or empty if it has none
+   */
+  Optional<Path> restore(final Path generation, final Path target) {
+    mirror(generation.resolve(LIBRARY_FOLDER), target);
+    final var manifest = generation.resolve(MANIFEST_FILE);
+    return Files.exists(manifest) ? Optional.of(manifest) : Optional.empty();
+  }
+
+  private void mirror(final Path source, final Path target) {
+    final var copied = source.resolve(libraryFolder.relativize(libraryDefinitionFile).toString());
+    try (final var stream = Files.walk(source)) {
+      stream
+          .filter(Files::isRegularFile)
+          .forEach(
+              file -> {
+                progress.fileOperations(1);
+                final var targetFile = target.resolve(source.relativize(file).toString());
+                if (file.equals(copied)) {
+                  copy(file, targetFile);
+                } else {
+                  FileHelper.linkOrCopy(file, targetFile);
+                }
+              });
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  private static void copy(final Path file, final Path targetFile) {
+    try {
+      Files.createDirectories(targetFile.getParent());
+      Files.copy(file, targetFile, StandardCopyOption.COPY_ATTRIBUTES);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /**
+   * Compares a generation with the library. Files are compared by their identity, except for the
+   * copied {@code library.txt}, which is compared by its content.
+   */
+  private boolean matchesLibrary(final Path generation) {
+    final var mirrored = generation.resolve(LIBRARY_FOLDER);
+    final var libraryFiles = listFiles(libraryFolder);
+    if (!libraryFiles.equals(listFiles(mirrored))) {
+      return false;
+    }
+    try {
+      for (final var file : libraryFiles) {
+        progress.fileOperations(1);
+        final var live = libraryFolder.resolve(file);
+        final var recorded = mirrored.resolve(file);
+        final var same =
+            live.equals(libraryDefinitionFile)
+                ? Arrays.equals(Files.readAllBytes(live), Files.readAllBytes(recorded))
+                : Files.isSameFile(live, recorded);
+        if (!same) {
+          return false;
+        }
+      }
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+    return true;
+  }
+
+  /**
+   * Compares the {@code library.txt} and sync-manifest of a generation with those of the library,
+   * by their content.
+   */
+  private boolean matchesDefinition(final Path generation) {
+    final var recordedDefinition =
+        generation
+            .resolve(LIBRARY_FOLDER)
+            .resolve(libraryFolder.relativize(libraryDefinitionFile).toString());
+    progress.fileOperations(4);
+    return sameContent(libraryDefinitionFile, recordedDefinition)
+        && sameContent(syncManifestFile, generation.resolve(MANIFEST_FILE));
+  }
+
+  private static boolean sameContent(final Path file, final Path other) {
+    try {
+      return Files.exists(file)
+          ? Files.exists(other)
+              && Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(other))
+          : Files.notExists(other);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  private List<String> listFiles(final Path dir) {
+    if (!Files.isDirectory(dir)) {
+      return List.of();
+    }
+    try (final var stream = Files.walk(dir)) {
+      return stream
+          .filter(
+              path -> {
+                progress.fileOperations(1);
+                return Files.isRegularFile(path);
+              })
+          .map(file -> dir.relativize(file).toString())
+          .sorted()
+          .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  private void applyRetention(final TreeMap<Integer, Path> generations) {
+    final var oldestKept = Instant.now().minus(maxAge);
+    final var newest = generations.lastKey();
+    var remaining = generations.size();
+    for (final var entry : generations.entrySet()) {
+      if (entry.getKey().equals(newest)) {
+        break;
+      }
+      if (remaining > keepGenerations || recordedBefore(entry.getValue(), oldestKept)) {
+        LOG.debug("Removing library generation {}", entry.getKey());
+        FileHelper.deleteRecursively(entry.getValue());
+        remaining--;
+      }
+    }
+  }
+
+  /**
+   * @param generation Folder of a generation
+   * @return Time the generation was recorded at
+   */
+  static Instant recordedAt(final Path generation) {
+    try {
+      return Files.getLastModifiedTime(generation).toInstant();
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  private static boolean recordedBefore(final Path generation, final Instant instant) {
+    return recordedAt(generation).isBefore(instant);
+  }
+}
@@ -1,23 +1,40 @@
 package de.melb00m.tr4o.library;
 
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigRenderOptions;
+import com.typesafe.config.ConfigUtil;
 import de.melb00m.tr4o.app.Transparency4Ortho;
 import de.melb00m.tr4o.exceptions.Exceptions;
 import de.melb00m.tr4o.helper.FileHelper;
+import de.melb00m.tr4o.helper.OutputHelper;
 import de.melb00m.tr4o.misc.Verify;
+import de.melb00m.tr4o.monitoring.LibraryDefinitionEvent;
+import de.melb00m.tr4o.progress.ProgressTracker;
+import de.melb00m.tr4o.tiles.BoundingBox;
 import de.melb00m.tr4o.tiles.Tile;
+import de.melb00m.tr4o.tiles.TileProvenance;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -32,8 +49,10 @@ import java.util.stream.Collectors;
  * linked in the overlay-tiles of ortho-scenery to keep the original way that roads look intact for
  * regular (non-ortho) ground textures that X-Plane generates on the fly.
  *
- * <p>With {@link #applyLibraryModifications()} the {@code roads(_EU).net}-files are also
- * automatically changed to achieve the transparency effect.
+ * <p>While the library is created, the {@code roads(_EU).net}-files are also automatically changed
+ * to achieve the transparency effect (see {@link RoadNetworkModifier}). Besides the default
+ * modifications, additional {@link LibraryProfile}s with their own modifications can be configured
+ * for specific regions; unmodified files are shared between all profiles.
  *
  * @author Martin Buchheim
  */
@@ -42,6 +61,7 @@ public class LibraryGenerator {
   private static final Logger LOG = LogManager.getLogger(LibraryGenerator.class);
   private static final String EXPORT_DIRECTIVE =
       Transparency4Ortho.CONFIG.getString("libgen.generation.export-directive");
+  private static final String EXPORT_KEYWORD = EXPORT_DIRECTIVE.split("\\s+", 2)[0];
   private static final List<String> LIB_TXT_HEADERS =
       Transparency4Ortho.CONFIG.getStringList("libgen.generation.library-header");
   private static final String REGION_RECT_FORMAT =
@@ -50,16 +70,30 @@ public class LibraryGenerator {
       Transparency4Ortho.CONFIG.getString("libgen.generation.region-define-format");
   private static final String REGION_USE_FORMAT =
       Transparency4Ortho.CONFIG.getString("libgen.generation.region-use-format");
+  private static final String PROFILE_REGION_NAME_FORMAT =
+      Transparency4Ortho.CONFIG.getString("libgen.generation.profile-region-name-format");
+  private static final Pattern REGION_DEFINE_PATTERN =
+      Pattern.compile(Transparency4Ortho.CONFIG.getString("libgen.generation.region-define-regex"));
+  private static final Pattern REGION_RECT_PATTERN =
+      Pattern.compile(Transparency4Ortho.CONFIG.getString("libgen.generation.region-rect-regex"));
+  private static final Pattern PROFILE_NAME_PATTERN = Pattern.compile("\\w+");
 
   private final Transparency4Ortho command;
   private final String libraryPrefix;
   private final Path libraryFolder;
   private final Path libraryDefinitionFile;
+  private final Path provenanceFile;
+  private final Path coverageFile;
   private final Path roadLibraryTargetFolder;
   private final Path roadsLibrarySourceFolder;
   private final Set<Path> roadsLibraryExcludes;
-  private final Set<String> roadsLibraryExportDefinitions;
+  private final List<String> roadsLibraryExportDefinitions;
   private final Set<Path> modifyUncommentRoadFiles;
+  private final Path roadsLibraryStoreFolder;
+  private final Path stagingFolder;
+  private final Path syncManifestFile;
+  private final Path scanSnapshotFile;
+  private final LibraryGenerations generations;
 
   public LibraryGenerator(final Transparency4Ortho command) {
     this.command = command;
@@ -68,6 +102,10 @@ public class LibraryGenerator {
     this.libraryFolder = xplanePath.resolve(command.config().getString("libgen.library.folder"));
     this.libraryDefinitionFile =
         xplanePath.resolve(command.config().getString("libgen.library.definition-file"));
+    this.provenanceFile =
+        xplanePath.resolve(command.config().getString("libgen.library.provenance-file"));
+    this.coverageFile =
+        xplanePath.resolve(command.config().getString("libgen.library.coverage-file"));
     this.roadLibraryTargetFolder =
         xplanePath.resolve(command.config().getString("libgen.resources.roads.target"));
     this.roadsLibrarySourceFolder =
@@ -77,11 +115,28 @@ public class LibraryGenerator {
             .map(xplanePath::resolve)
             .collect(Collectors.toSet());
     this.roadsLibraryExportDefinitions =
-        Set.copyOf(command.config().getStringList("libgen.resources.roads.exports"));
+        List.copyOf(command.config().getStringList("libgen.resources.roads.exports"));
     this.modifyUncommentRoadFiles =
         command.config().getStringList("libgen.modifications.roads.uncomment.target-files").stream()
             .map(xplanePath::resolve)
             .collect(Collectors.toUnmodifiableSet());
+    this.roadsLibraryStoreFolder =
+        xplanePath.resolve(command.config().getString("libgen.resources.roads.store"));
+    this.stagingFolder =
+        xplanePath.resolve(command.config().getString("libgen.state.staging-folder"));
+    this.syncManifestFile =
+        xplanePath.resolve(command.config().getString("libgen.state.sync-manifest"));
+    this.scanSnapshotFile =
+        xplanePath.resolve(command.config().getString("libgen.state.scan-snapshot"));
+    this.generations =
+        new LibraryGenerations(
+            xplanePath.resolve(command.config().getString("libgen.generations.folder")),
+            libraryFolder,
+            libraryDefinitionFile,
+            syncManifestFile,
+            command.config().getInt("libgen.generations.keep"),
+            Duration.ofDays(command.config().getInt("libgen.generations.max-age-days")),
+            command.getProgressTracker());
   }
 
   /**
@@ -109,151 +164,437 @@ public class LibraryGenerator {
   }
 
   private void createLibrary() throws IOException {
+    verifyRoadsLibrarySource();
+    final var pipeline = createPipeline();
+
+    LOG.info("Copying X-Plane default roads-library to {}", libraryFolder);
+    final var progress = command.getProgressTracker();
+    progress.reset(ProgressTracker.Counter.BYTES_COPIED);
+    final Map<Path, String> checksums;
+    try (final var display =
+        OutputHelper.maybeShowProgress(
+            "Creating library",
+            progress,
+            ProgressTracker.Counter.BYTES_COPIED,
+            Level.TRACE,
+            command)) {
+      Files.createDirectories(roadLibraryTargetFolder);
+      checksums = pipeline.run(libraryFolder, this::verifyRoadsLibraryChecksum);
+      verifyUnprocessedChecksums(checksums.keySet());
+    } catch (IOException | RuntimeException e) {
+      rollbackLibrary();
+      throw e;
+    }
+    final var manifest = LibrarySyncManifest.empty(calcSettingsFingerprint());
+    checksums.forEach(
+        (source, checksum) -> recordInManifest(manifest, pipeline, libraryFolder, source, checksum));
+    manifest.save(syncManifestFile);
+    reportRemovedPrimitives(pipeline);
+  }
+
+  private void reportRemovedPrimitives(final RoadsLibraryPipeline pipeline) {
+    for (final var profile : pipeline.getProfiles()) {
+      if (profile.getModifier().isEmpty()) {
+        continue;
+      }
+      final var modifier = profile.getModifier().get();
+      final var level = modifier.isPerformanceProfileEnabled() ? Level.INFO : Level.DEBUG;
+      final var removed = modifier.getRemovedPrimitives();
+      if (removed.isEmpty()) {
+        continue;
+      }
+      LOG.log(level, "Road-network primitives removed for library profile '{}':", profile);
+      removed.forEach(
+          (group, counts) ->
+              LOG.log(
+                  level,
+                  "     {}: {}",
+                  group,
+                  counts.entrySet().stream()
+                      .map(count -> count.getKey() + " " + count.getValue())
+                      .collect(Collectors.joining(", "))));
+    }
+  }
+
+  private void verifyRoadsLibrarySource() {
     Verify.withErrorMessage(
             "Can't find X-Plane default roads-library at expected location: %s",
             roadsLibrarySourceFolder)
         .state(Files.exists(roadsLibrarySourceFolder));
-    validateRoadsLibraryChecksum();
-    copyLibraryFolder();
-    applyLibraryModifications();
-  }
-
-  private void validateRoadsLibraryChecksum() {
-    var crcConfig = command.config().getConfig("libgen.resources.roads.checksum");
-    crcConfig
-        .entrySet()
-        .forEach(
-            entry -> {
-              var file = roadsLibrarySourceFolder.resolve(entry.getKey().replace("\"", ""));
-              var fileCrc = FileHelper.deepMD5Hash(file).toUpperCase();
-              var expectedCrcs = crcConfig.getStringList(entry.getKey());
-              if (!expectedCrcs.contains(fileCrc)) {
-                LOG.info("Checksum mismatch for file at: {}", file);
-                LOG.debug("Checksum was {} (Expected: {})", fileCrc, expectedCrcs);
-                LOG.info(
-                    "If you have made changes to your X-Plane default roads-library, please run the X-Plane installer again to reset it.");
-                LOG.info(
-                    "If this error persists afterwards, you might use an unsupported version of X-Plane.");
-                Verify.withErrorMessage(
-                        "Aborting. Use '-i' if you want to ignore the checksum mismatch.")
-                    .state(command.isIgnoreChecksumErrors());
-              }
-            });
-  }
-
-  private void copyLibraryFolder() throws IOException {
-    LOG.info("Copying X-Plane default roads-library to {}", libraryFolder);
-    Files.createDirectories(roadLibraryTargetFolder);
-    FileHelper.copyRecursively(
-        roadsLibrarySourceFolder,
-        roadLibraryTargetFolder,
-        roadsLibraryExcludes.toArray(new Path[0]));
   }
 
-  private void applyLibraryModifications() {
+  private RoadsLibraryPipeline createPipeline() {
     if (command.isSkipLibraryModifications()) {
       LOG.info("Skipping automatic library modifications");
+    } else {
+      LOG.info("Applying modifications for transparent roads");
+    }
+    final var profiles = createProfiles();
+    LOG.debug("Library profiles: {}", profiles);
+    return new RoadsLibraryPipeline(
+        roadsLibrarySourceFolder,
+        roadsLibraryExcludes,
+        modifyUncommentRoadFiles.stream()
+            .map(roadLibraryTargetFolder::relativize)
+            .collect(Collectors.toUnmodifiableSet()),
+        profiles,
+        libraryFolder.relativize(roadsLibraryStoreFolder),
+        command.getProgressTracker());
+  }
+
+  /**
+   * Creates the profiles of the library from the configuration. The default profile always comes
+   * first, followed by the additional profiles in the order they are configured in.
+   *
+   * @return Profiles of the library
+   */
+  private List<LibraryProfile> createProfiles() {
+    final var defaultFolder = libraryFolder.relativize(roadLibraryTargetFolder);
+    final var defaultModifications = command.config().getConfig("libgen.modifications.roads");
+    final var profiles = new ArrayList<LibraryProfile>();
+    profiles.add(
+        new LibraryProfile(
+            "default",
+            command.config().getString("libgen.generation.region-name"),
+            defaultFolder,
+            List.of(),
+            createModifier(defaultModifications)));
+    for (final var profileConfig : command.config().getConfigList("libgen.profiles")) {
+      final var name = profileConfig.getString("name");
+      Verify.withErrorMessage("Invalid library profile name (only A-Z, 0-9 and _ allowed): %s", name)
+          .argument(PROFILE_NAME_PATTERN.matcher(name).matches());
+      Verify.withErrorMessage("Library profile is configured more than once: %s", name)
+          .argument(profiles.stream().noneMatch(profile -> profile.getName().equals(name)));
+      final var modifications =
+          profileConfig.hasPath("modifications.roads")
+              ? profileConfig.getConfig("modifications.roads").withFallback(defaultModifications)
+              : defaultModifications;
+      profiles.add(
+          new LibraryProfile(
+              name,
+              String.format(PROFILE_REGION_NAME_FORMAT, profiles.get(0).getRegionName(), name),
+              defaultFolder.resolveSibling(defaultFolder.getFileName() + "_" + name),
+              profileConfig.getStringList("regions").stream()
+                  .map(BoundingBox::parse)
+                  .collect(Collectors.toList()),
+              createModifier(modifications)));
+    }
+    return profiles;
+  }
+
+  private Optional<RoadNetworkModifier> createModifier(final Config modifications) {
+    return command.isSkipLibraryModifications()
+        ? Optional.empty()
+        : Optional.of(new RoadNetworkModifier(modifications));
+  }
+
+  private void recordInManifest(
+      final LibrarySyncManifest manifest,
+      final RoadsLibraryPipeline pipeline,
+      final Path libraryRoot,
+      final Path sourceFile,
+      final String checksum) {
+    for (final var profile : pipeline.getProfiles()) {
+      manifest.record(
+          manifestKey(profile, sourceFile),
+          sourceFile,
+          checksum,
+          pipeline.resolveTarget(libraryRoot, profile, sourceFile));
+    }
+  }
+
+  private String manifestKey(final LibraryProfile profile, final Path sourceFile) {
+    return profile.getName() + ":" + relativeSourcePath(sourceFile);
+  }
+
+  private String calcSettingsFingerprint() {
+    final var settings =
+        command
+                .config()
+                .getConfig("libgen.modifications")
+                .root()
+                .render(ConfigRenderOptions.concise())
+            + "|profiles="
+            + command.config().getList("libgen.profiles").render(ConfigRenderOptions.concise())
+            + "|skip-modifications="
+            + command.isSkipLibraryModifications();
+    return UUID.nameUUIDFromBytes(settings.getBytes(StandardCharsets.UTF_8)).toString();
+  }
+
+  private String relativeSourcePath(final Path sourceFile) {
+    return roadsLibrarySourceFolder.relativize(sourceFile).toString().replace('\\', '/');
+  }
+
+  private void abortOnChecksumMismatch() {
+    Verify.withErrorMessage("Aborting. Use '-i' if you want to ignore the checksum mismatch.")
+        .state(false);
+  }
+
+  /**
+   * Verifies the checksum of a source file of the roads-library, if one is configured for it.
+   * Aborts on a mismatch, unless checksum errors are ignored.
+   *
+   * @param file Source file
+   * @param checksum Upper-case MD5-checksum of the file, {@code null} if it does not exist
+   */
+  private void verifyRoadsLibraryChecksum(final Path file, final String checksum) {
+    final var crcConfig = command.config().getConfig("libgen.resources.roads.checksum");
+    final var fileName = relativeSourcePath(file);
+    if (!crcConfig.root().containsKey(fileName)) {
       return;
     }
-    LOG.info("Applying modifications for transparent roads");
-    final var uncommentPatterns =
-        command.config().getStringList("libgen.modifications.roads.uncomment.lines-matching")
-            .stream()
-            .map(Pattern::compile)
-            .collect(Collectors.toUnmodifiableSet());
-    final var groupPattern =
-        Pattern.compile(
-            command.config().getString("libgen.modifications.roads.uncomment.groups-regex"));
-    final var uncommentEnabledGroups =
-        command.config().getStringList("libgen.modifications.roads.uncomment.groups-enabled")
-            .stream()
-            .collect(Collectors.toUnmodifiableSet());
-    try {
-      for (final var fileToModify : modifyUncommentRoadFiles) {
-        Verify.withErrorMessage("File not writeable for modification: %s", fileToModify)
-            .state(Files.isWritable(fileToModify));
-        final var lines = Files.readAllLines(fileToModify);
-        final var newLines = new ArrayList<String>(lines.size());
-        final var groups = new ArrayList<String>();
-        var uncommentEnabledBlock = false;
-        for (int lineNo = 0; lineNo < lines.size(); lineNo++) {
-          final var line = lines.get(lineNo);
-          var matcher = groupPattern.matcher(line);
-          if (matcher.matches()) {
-            final var groupName = matcher.group("groupName");
-            groups.add(groupName);
-            uncommentEnabledBlock = uncommentEnabledGroups.contains(groupName);
-          }
-          final var uncomment =
-              uncommentEnabledBlock && uncommentPatterns.stream().anyMatch(pattern -> pattern.matcher(line).matches());
-          final var newLine = uncomment ? String.format("#(Transparency4Ortho) %s", line) : line;
-          if (uncomment) {
-            LOG.trace(
-                "Line {} in {} changed from '{}' to '{}'", lineNo + 1, fileToModify, line, newLine);
-          }
-          newLines.add(newLine);
-        }
-        LOG.trace("Groups identified in file {}: {}", fileToModify, groups);
-        if (!Objects.equals(lines, newLines)) {
-          Files.write(fileToModify, newLines);
-          LOG.debug("Modifications saved in {}", fileToModify);
-        }
+    final var expectedCrcs = crcConfig.getStringList(ConfigUtil.joinPath(fileName));
+    if (expectedCrcs.contains(checksum)) {
+      return;
+    }
+    LOG.info("Checksum mismatch for file at: {}", file);
+    LOG.debug("Checksum was {} (Expected: {})", checksum, expectedCrcs);
+    LOG.info(
+        "If you have made changes to your X-Plane default roads-library, please run the X-Plane installer again to reset it.");
+    LOG.info("If this error persists afterwards, you might use an unsupported version of X-Plane.");
+    if (!command.isIgnoreChecksumErrors()) {
+      abortOnChecksumMismatch();
+    }
+  }
+
+  /**
+   * Verifies the checksums of the configured source files that were not processed (because they
+   * are excluded, or a file with their name already existed), by reading them separately.
+   *
+   * @param processed Source files whose checksum was already verified
+   */
+  private void verifyUnprocessedChecksums(final Set<Path> processed) {
+    for (final var fileName :
+        command.config().getConfig("libgen.resources.roads.checksum").root().keySet()) {
+      final var file = roadsLibrarySourceFolder.resolve(fileName);
+      if (processed.contains(file)) {
+        continue;
       }
-    } catch (IOException e) {
-      throw Exceptions.unrecoverable(e);
+      final var checksum =
+          Files.isRegularFile(file)
+              ? FileHelper.deepMD5Hash(file, command.getProgressTracker()).toUpperCase()
+              : null;
+      verifyRoadsLibraryChecksum(file, checksum);
     }
   }
 
+  private void rollbackLibrary() {
+    LOG.debug("Removing incomplete library at: {}", libraryFolder);
+    FileHelper.deleteRecursively(libraryFolder);
+  }
+
   /**
    * Generates the library.txt file containing with the given tiles mapped to our road-network
    * definitions.
    *
-   * @param tiles Tiles for which to use the modded road networks
+   * <p>Each tile is assigned to the first {@link LibraryProfile} whose regions cover it, or to the
+   * default profile otherwise. Every profile that has tiles assigned is written as a separate region
+   * with its own exports.
+   *
+   * <p>The ortho-sceneries providing each tile are recorded in the {@link TileProvenance} next to
+   * the {@code library.txt}. Tiles from previous runs are kept as long as one of their recorded
+   * ortho-sceneries still provides them, which is decided without scanning again: an ortho-scenery
+   * that is covered by this scan provides exactly the tiles found in it, any other one is assumed to
+   * still provide its tiles as long as its folder exists. Tiles without a recorded provenance (added
+   * manually or by a version before the provenance was recorded) and larger rects are always kept.
+   *
+   * @param scanned Provenance of the tiles found by the scan, for which to use the modded road
+   *     networks
+   * @param scannedFolders Folders whose ortho-sceneries are completely covered by the scan
    * @param removeExistingEntries Keep existing definitions intact
    */
   public void generateLibraryTxt(
-      final Collection<Tile> tiles, final boolean removeExistingEntries) {
+      final TileProvenance scanned,
+      final Collection<Path> scannedFolders,
+      final boolean removeExistingEntries) {
     LOG.info("Generating library at {}", libraryDefinitionFile);
-    final var regionName = command.config().getString("libgen.generation.region-name");
+    final var profiles = createProfiles();
     try {
+      // collect region-rects per profile
+      final var regionRects = new LinkedHashMap<LibraryProfile, Set<String>>();
+      profiles.forEach(profile -> regionRects.put(profile, new TreeSet<>()));
+      final Consumer<Tile> assignToProfile =
+          tile -> regionRects.get(findProfile(profiles, tile)).add(formatTileToRegionRect(tile));
+      final var provenance = new TileProvenance();
+      scanned
+          .getTiles()
+          .forEach(tile -> scanned.getPacks(tile).forEach(pack -> provenance.add(tile, pack)));
+      if (!removeExistingEntries) {
+        final var previousTiles = new ArrayList<Tile>();
+        final var kept = fetchExistingRegionRects(libraryDefinitionFile, regionRects, previousTiles);
+        final var dropped =
+            collectPreviousTiles(previousTiles, scanned, scannedFolders, provenance);
+        LOG.debug("{} tile-definitions from previous runs will be kept", kept - dropped.size());
+        if (!dropped.isEmpty()) {
+          LOG.info(
+              "{} tiles are removed from the library, as the ortho-sceneries providing them are gone",
+              dropped.size());
+          LOG.debug("     {}", dropped);
+        }
+        previousTiles.stream().filter(tile -> !dropped.contains(tile)).forEach(assignToProfile);
+      }
+      scanned.getTiles().forEach(assignToProfile);
+      regionRects
+          .entrySet()
+          .removeIf(entry -> entry.getValue().isEmpty() && entry.getKey() != profiles.get(0));
+
       // set header
       final var libraryLines = new ArrayList<>(LIB_TXT_HEADERS);
 
-      // add region definition
-      libraryLines.add(String.format(REGION_DEFINE_FORMAT, regionName));
+      // add region definitions
+      regionRects.forEach(
+          (profile, rects) -> {
+            libraryLines.add(String.format(REGION_DEFINE_FORMAT, profile.getRegionName()));
+            libraryLines.addAll(rects);
+          });
 
-      // add region-rects
-      final var regionRects = new TreeSet<String>();
-      if (!removeExistingEntries) {
-        regionRects.addAll(fetchExistingRegionRects(libraryDefinitionFile));
-        LOG.debug("{} tile-definitions from previous runs will be kept", regionRects.size());
+      // use regions and append exports
+      for (final var profile : regionRects.keySet()) {
+        LOG.debug(
+            "Library profile '{}' is used for {} tiles", profile, regionRects.get(profile).size());
+        final var profileFolder = libraryFolder.resolve(profile.getRelativeFolder().toString());
+        libraryLines.add("");
+        libraryLines.add(String.format(REGION_USE_FORMAT, profile.getRegionName()));
+        roadsLibraryExportDefinitions.stream()
+            .map(export -> buildExportDirective(export, profileFolder.resolve(export)))
+            .forEach(libraryLines::add);
       }
-      tiles.stream().map(this::formatTileToRegionRect).forEach(regionRects::add);
-      libraryLines.addAll(regionRects);
-
-      // use region and append exports
-      libraryLines.add("");
-      libraryLines.add(String.format(REGION_USE_FORMAT, regionName));
-      roadsLibraryExportDefinitions.stream()
-          .map(export -> buildExportDirective(export, roadLibraryTargetFolder.resolve(export)))
-          .forEach(libraryLines::add);
 
-      Files.write(libraryDefinitionFile, libraryLines);
+      // keep the previous library.txt restorable, even if it was never recorded before
+      generations.recordDefinition();
+      final var event = new LibraryDefinitionEvent();
+      event.begin();
+      // replaced instead of overwritten, so generations linking the previous file stay intact
+      final var tempFile =
+          libraryDefinitionFile.resolveSibling(libraryDefinitionFile.getFileName() + ".tmp");
+      Files.write(tempFile, libraryLines);
+      Files.move(
+          tempFile,
+          libraryDefinitionFile,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      if (event.shouldCommit()) {
+        event.path = libraryDefinitionFile.toString();
+        event.regionRects = regionRects.values().stream().mapToInt(Set::size).sum();
+        event.bytes = Files.size(libraryDefinitionFile);
+        event.commit();
+      }
+      provenance.save(provenanceFile);
+      writeCoverageFile(profiles, regionRects);
+      generations.recordDefinition();
     } catch (IOException e) {
       throw new IllegalStateException(
           String.format("Failed to generate library.txt at: %s", libraryDefinitionFile), e);
     }
   }
 
-  private Set<String> fetchExistingRegionRects(final Path libraryTxt) throws IOException {
+  /**
+   * Adds the ortho-sceneries that still provide the tiles of previous runs to the provenance.
+   *
+   * @return Tiles whose recorded ortho-sceneries are all gone
+   */
+  private Set<Tile> collectPreviousTiles(
+      final Collection<Tile> previousTiles,
+      final TileProvenance scanned,
+      final Collection<Path> scannedFolders,
+      final TileProvenance provenance) {
+    final var recorded = TileProvenance.load(provenanceFile, command.getFileSystem());
+    final var dropped = new TreeSet<Tile>();
+    for (final var tile : previousTiles) {
+      final var recordedPacks = recorded.getPacks(tile);
+      recordedPacks.stream()
+          .filter(pack -> !scanned.getPacks(tile).contains(pack))
+          .filter(
+              pack -> scannedFolders.stream().noneMatch(dir -> pack.startsWith(dir.toAbsolutePath())))
+          .filter(Files::isDirectory)
+          .forEach(pack -> provenance.add(tile, pack));
+      if (!recordedPacks.isEmpty() && provenance.getPacks(tile).isEmpty()) {
+        LOG.trace("Tile {} is no longer provided by {}", tile, recordedPacks);
+        dropped.add(tile);
+      }
+    }
+    return dropped;
+  }
+
+  private LibraryProfile findProfile(final List<LibraryProfile> profiles, final Tile tile) {
+    return profiles.stream()
+        .filter(profile -> profile.covers(tile))
+        .findFirst()
+        .orElse(profiles.get(0));
+  }
+
+  /**
+   * Reads the region-rects of an existing library.txt.
+   *
+   * <p>Rects covering a single tile are returned as tiles, so they are assigned to a profile
+   * according to the current configuration. Larger rects (which have been added manually) are kept
+   * as they are in the region they were defined in, or in the default region if that no longer
+   * exists.
+   *
+   * @param libraryTxt Existing library.txt
+   * @param regionRects Rects per profile, to which the larger rects are added
+   * @param tiles Collection to which the single-tile rects are added
+   * @return Number of rects that were found
+   */
+  private int fetchExistingRegionRects(
+      final Path libraryTxt,
+      final Map<LibraryProfile, Set<String>> regionRects,
+      final Collection<Tile> tiles)
+      throws IOException {
     if (!Files.exists(libraryTxt)) {
-      return Collections.emptySet();
+      return 0;
+    }
+    final var defaultProfile = regionRects.keySet().iterator().next();
+    var currentProfile = defaultProfile;
+    var found = 0;
+    for (final var line : Files.readAllLines(libraryTxt)) {
+      final var defineMatcher = REGION_DEFINE_PATTERN.matcher(line);
+      if (defineMatcher.matches()) {
+        final var regionName = defineMatcher.group("regionName");
+        currentProfile =
+            regionRects.keySet().stream()
+                .filter(profile -> profile.getRegionName().equals(regionName))
+                .findFirst()
+                .orElse(defaultProfile);
+        continue;
+      }
+      final var rectMatcher = REGION_RECT_PATTERN.matcher(line);
+      if (!rectMatcher.matches()) {
+        continue;
+      }
+      found++;
+      final var west = Integer.parseInt(rectMatcher.group("west"));
+      final var south = Integer.parseInt(rectMatcher.group("south"));
+      if (west == Integer.parseInt(rectMatcher.group("east"))
+          && south == Integer.parseInt(rectMatcher.group("north"))) {
+        tiles.add(new Tile(south, west));
+      } else {
+        regionRects.get(currentProfile).add(line);
+      }
     }
-    final var pattern =
-        Pattern.compile(command.config().getString("libgen.generation.region-rect-regex"));
-    return Files.readAllLines(libraryTxt).stream()
-        .filter(line -> pattern.matcher(line).matches())
-        .collect(Collectors.toSet());
+    return found;
+  }
+
+  /** Exports the tiles of the region-rects, as written to the library.txt, as binary file */
+  private void writeCoverageFile(
+      final List<LibraryProfile> profiles, final Map<LibraryProfile, Set<String>> regionRects) {
+    final var coverage =
+        new CoverageFile(
+            profiles.stream().map(LibraryProfile::getName).collect(Collectors.toList()));
+    regionRects.forEach(
+        (profile, rects) ->
+            rects.stream()
+                .map(REGION_RECT_PATTERN::matcher)
+                .filter(Matcher::matches)
+                .forEach(
+                    rect ->
+                        coverage.cover(
+                            profiles.indexOf(profile),
+                            Integer.parseInt(rect.group("west")),
+                            Integer.parseInt(rect.group("south")),
+                            Integer.parseInt(rect.group("east")),
+                            Integer.parseInt(rect.group("north")))));
+    coverage.save(coverageFile);
   }
 
   private String formatTileToRegionRect(final Tile tile) {
@@ -261,7 +602,9 @@ public class LibraryGenerator {
   }
 
   private String buildExportDirective(final String exportName, final Path fileLocation) {
-    Verify.withErrorMessage("File to be used for export directive does not exist: %s", fileLocation)
+    Verify.withErrorMessage(
+            "File to be used for export directive does not exist: %s (use '--regenerateLibrary' after changing the library profiles)",
+            fileLocation)
         .state(Files.exists(fileLocation));
     final var relativePath = libraryFolder.relativize(fileLocation).toString().replace('\\', '/');
     return String.format(EXPORT_DIRECTIVE, libraryPrefix, exportName, relativePath);
@@ -275,10 +618,12 @@ public class LibraryGenerator {
       LOG.info("Regenerating library at: {}", libraryFolder);
       try {
         if (Files.exists(libraryFolder)) {
+          generations.record();
           LOG.debug("Deleting existing library at: {}", libraryFolder);
           FileHelper.deleteRecursively(libraryFolder);
         }
         createLibrary();
+        generations.record();
       } catch (IOException e) {
         throw new IllegalStateException(
             String.format("Failed to regenerate library at: %s", libraryFolder), e);
@@ -286,6 +631,295 @@ public class LibraryGenerator {
     }
   }
 
+  /**
+   * Brings an existing Transparency4Ortho-library up to date with the X-Plane default
+   * roads-library, while keeping it available to X-Plane, except for the moment the staged library
+   * is swapped in.
+   *
+   * <p>The new library is assembled in a staging folder. Files whose source did not change since
+   * the library was created (judging by size, modification time and - if those differ - content)
+   * are hard-linked from the current library for all profiles, all others are processed again.
+   * Files of the current library that are not part of the roads-library (such as the {@code
+   * library.txt}) are carried over. Finally, the staged library replaces the current one.
+   *
+   * <p>If no library exists yet, it is created from scratch.
+   */
+  public void synchronizeLibrary() {
+    synchronized (LibraryGenerator.class) {
+      LOG.info("Synchronizing library at: {}", libraryFolder);
+      try {
+        if (!Files.exists(libraryFolder)) {
+          LOG.info("No existing library found, creating it from scratch");
+          createLibrary();
+          return;
+        }
+        verifyRoadsLibrarySource();
+        generations.record();
+        FileHelper.deleteRecursively(stagingFolder);
+        try {
+          final var manifest = stageLibrary();
+          swapInStagedLibrary();
+          manifest.save(syncManifestFile);
+        } finally {
+          FileHelper.deleteRecursively(stagingFolder);
+        }
+        generations.record();
+      } catch (IOException e) {
+        throw new IllegalStateException(
+            String.format("Failed to synchronize library at: %s", libraryFolder), e);
+      }
+    }
+  }
+
+  /**
+   * Restores a generation of the library that was recorded in the backup-folder.
+   *
+   * <p>The library of the generation is assembled from hard-links in the staging folder and then
+   * swapped in for the current library, so X-Plane either sees the current or the restored library,
+   * never a mix of both. The sync-manifest of the generation is restored along with it, while the
+   * scan-snapshot is removed, so {@code --check} does not report the restored library.txt as up to
+   * date without a rescan.
+   *
+   * @param generation Number of the generation, or {@code 0} for the one recorded before the
+   *     current state of the library
+   */
+  public void restoreGeneration(final int generation) {
+    synchronized (LibraryGenerator.class) {
+      final var available = generations.list();
+      Verify.withErrorMessage("No library generations are recorded yet")
+          .state(!available.isEmpty());
+      final int number;
+      if (generation > 0) {
+        number = generation;
+      } else {
+        final var current = generations.findCurrent();
+        final var previous =
+            current.isPresent() ? available.lowerKey(current.get()) : available.lastKey();
+        Verify.withErrorMessage(
+                "The library is at its oldest recorded generation %d", current.orElse(0))
+            .state(previous != null);
+        number = previous;
+      }
+      Verify.withErrorMessage(
+              "Library generation %d does not exist (recorded generations: %s)",
+              number, available.keySet())
+          .argument(available.containsKey(number));
+      final var generationFolder = available.get(number);
+      LOG.info(
+          "Rolling back library to generation {} (recorded {})",
+          number,
+          LibraryGenerations.recordedAt(generationFolder));
+      try {
+        FileHelper.deleteRecursively(stagingFolder);
+        try {
+          final var manifest = generations.restore(generationFolder, stagingFolder);
+          if (Files.exists(libraryFolder)) {
+            swapInStagedLibrary();
+          } else {
+            Files.move(stagingFolder, libraryFolder, StandardCopyOption.ATOMIC_MOVE);
+          }
+          if (manifest.isPresent()) {
+            Files.copy(manifest.get(), syncManifestFile, StandardCopyOption.REPLACE_EXISTING);
+          } else {
+            Files.deleteIfExists(syncManifestFile);
+          }
+          Files.deleteIfExists(scanSnapshotFile);
+        } finally {
+          FileHelper.deleteRecursively(stagingFolder);
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException(
+            String.format("Failed to roll back library at: %s", libraryFolder), e);
+      }
+    }
+  }
+
+  private LibrarySyncManifest stageLibrary() throws IOException {
+    final var fingerprint = calcSettingsFingerprint();
+    final var previousManifest = LibrarySyncManifest.load(syncManifestFile, fingerprint);
+    final var manifest = LibrarySyncManifest.empty(fingerprint);
+    final var pipeline = createPipeline();
+    final var checksums = new HashMap<Path, String>();
+    var reused = 0;
+    final var sourceFiles = pipeline.listSourceFiles();
+    for (final var sourceFile : sourceFiles) {
+      final var unchangedChecksum = findUnchangedChecksum(previousManifest, pipeline, sourceFile);
+      final String checksum;
+      if (unchangedChecksum.isPresent()) {
+        LOG.trace("Source of {} is unchanged, re-using it", sourceFile);
+        checksum = unchangedChecksum.get();
+        reuseLiveFiles(pipeline, sourceFile, checksum);
+        reused++;
+      } else {
+        LOG.debug("Source of {} has changed, processing it again", sourceFile);
+        checksum = pipeline.processFile(sourceFile, stagingFolder);
+      }
+      verifyRoadsLibraryChecksum(sourceFile, checksum);
+      checksums.put(sourceFile, checksum);
+      recordInManifest(manifest, pipeline, stagingFolder, sourceFile, checksum);
+    }
+    LOG.info(
+        "{} of {} library files were unchanged, {} were processed again",
+        reused,
+        sourceFiles.size(),
+        sourceFiles.size() - reused);
+    carryOverNonLibraryFiles(pipeline);
+    verifyUnprocessedChecksums(checksums.keySet());
+    reportRemovedPrimitives(pipeline);
+    return manifest;
+  }
+
+  private Optional<String> findUnchangedChecksum(
+      final LibrarySyncManifest previousManifest,
+      final RoadsLibraryPipeline pipeline,
+      final Path sourceFile) {
+    String checksum = null;
+    for (final var profile : pipeline.getProfiles()) {
+      final var entry = previousManifest.get(manifestKey(profile, sourceFile));
+      final var liveFile = pipeline.resolveTarget(libraryFolder, profile, sourceFile);
+      if (entry.isEmpty() || !liveFileUnchanged(entry.get(), liveFile)) {
+        return Optional.empty();
+      }
+      checksum = entry.get().getSourceChecksum();
+    }
+    if (checksum == null) {
+      return Optional.empty();
+    }
+    try {
+      if (previousManifest
+          .get(manifestKey(pipeline.getProfiles().get(0), sourceFile))
+          .orElseThrow()
+          .sourceMetadataMatches(
+              Files.size(sourceFile), Files.getLastModifiedTime(sourceFile).toMillis())) {
+        return Optional.of(checksum);
+      }
+      // metadata changed (e.g. by an installer re-writing the file), so compare the content
+      final var currentChecksum =
+          FileHelper.deepMD5Hash(sourceFile, command.getProgressTracker()).toUpperCase();
+      return currentChecksum.equals(checksum) ? Optional.of(checksum) : Optional.empty();
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  private boolean liveFileUnchanged(final LibrarySyncManifest.Entry entry, final Path liveFile) {
+    try {
+      return Files.isRegularFile(liveFile)
+          && entry.targetMetadataMatches(
+              Files.size(liveFile), Files.getLastModifiedTime(liveFile).toMillis());
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  private void reuseLiveFiles(
+      final RoadsLibraryPipeline pipeline, final Path sourceFile, final String checksum) {
+    for (final var profile : pipeline.getProfiles()) {
+      FileHelper.linkOrCopy(
+          pipeline.resolveTarget(libraryFolder, profile, sourceFile),
+          pipeline.resolveTarget(stagingFolder, profile, sourceFile));
+    }
+    if (!pipeline.isModified(sourceFile)) {
+      final var stagedEntry = pipeline.resolveStoreEntry(stagingFolder, checksum);
+      if (!Files.exists(stagedEntry)) {
+        FileHelper.linkOrCopy(
+            pipeline.resolveTarget(stagingFolder, pipeline.getProfiles().get(0), sourceFile),
+            stagedEntry);
+      }
+    }
+  }
+
+  private void carryOverNonLibraryFiles(final RoadsLibraryPipeline pipeline) throws IOException {
+    final var libraryFolders =
+        pipeline.getProfiles().stream()
+            .map(profile -> libraryFolder.resolve(profile.getRelativeFolder().toString()))
+            .collect(Collectors.toList());
+    libraryFolders.add(roadsLibraryStoreFolder);
+    try (final var stream = Files.walk(libraryFolder)) {
+      stream
+          .filter(Files::isRegularFile)
+          .filter(file -> libraryFolders.stream().noneMatch(file::startsWith))
+          .forEach(
+              file ->
+                  FileHelper.linkOrCopy(
+                      file, stagingFolder.resolve(libraryFolder.relativize(file).toString())));
+    }
+  }
+
+  /**
+   * Replaces the library with the staged one. Neither Java nor Windows can exchange two folders in
+   * a single step, so this takes two renames, each of them atomic: the library is moved aside to
+   * {@code Staging.retired} and the staged library is moved into its place. In between - usually
+   * for a few milliseconds - there is no library folder at all.
+   *
+   * <p>On Windows, a folder cannot be renamed while a file in it is open (e.g. by a running
+   * X-Plane). If the first rename fails, the library is left as it is. If the second one fails, the
+   * library is moved back; if even that fails, the library remains in {@code Staging.retired}
+   * and the error says so, as it has to be moved back by hand.
+   */
+  private void swapInStagedLibrary() throws IOException {
+    final var retiredFolder =
+        stagingFolder.resolveSibling(stagingFolder.getFileName() + ".retired");
+    FileHelper.deleteRecursively(retiredFolder);
+    LOG.debug("Swapping staged library {} into {}", stagingFolder, libraryFolder);
+    Files.move(libraryFolder, retiredFolder, StandardCopyOption.ATOMIC_MOVE);
+    try {
+      Files.move(stagingFolder, libraryFolder, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      try {
+        Files.move(retiredFolder, libraryFolder, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException revertFailure) {
+        e.addSuppressed(revertFailure);
+        throw new IllegalStateException(
+            String.format(
+                "Failed to swap in the staged library, and to move the previous library back: "
+                    + "move %s back to %s by hand",
+                retiredFolder, libraryFolder),
+            e);
+      }
+      throw e;
+    }
+    FileHelper.deleteRecursively(retiredFolder);
+  }
+
+  /**
+   * Checks that the {@code library.txt} and all files it exports are present. Only reads, never
+   * writes.
+   *
+   * @return Missing files (empty if the library is complete)
+   */
+  public List<Path> findMissingLibraryFiles() {
+    if (!Files.isRegularFile(libraryDefinitionFile)) {
+      return List.of(libraryDefinitionFile);
+    }
+    try (final var lines = Files.lines(libraryDefinitionFile)) {
+      return lines
+          .filter(line -> line.startsWith(EXPORT_KEYWORD))
+          .map(line -> line.split("\\s+", 3))
+          .filter(fields -> fields.length == 3)
+          .map(fields -> libraryFolder.resolve(fields[2].trim()))
+          .filter(file -> !Files.exists(file))
+          .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /**
+   * Returns the file holding the {@link de.melb00m.tr4o.tiles.ScanSnapshot} of the last run that
+   * generated the {@code library.txt}.
+   *
+   * @return Path to the scan-snapshot
+   */
+  public Path getScanSnapshotFile() {
+    return scanSnapshotFile;
+  }
+
+  /** @return Path to the {@code library.txt} */
+  public Path getLibraryDefinitionFile() {
+    return libraryDefinitionFile;
+  }
+
   /**
    * Returns the library folder for Transparency4Ortho inside X-Plane
    *
@@ -0,0 +1,76 @@
+package de.melb00m.tr4o.library;
+
+import de.melb00m.tr4o.tiles.BoundingBox;
+import de.melb00m.tr4o.tiles.Tile;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A transparency-profile of the Transparency4Ortho library.
+ *
+ * <p>Each profile has its own copy of the road-networks with its own modifications, and is used for
+ * the ortho-covered tiles of its regions. In the {@code library.txt}, every profile is emitted as a
+ * separate {@code REGION_DEFINE} with its own set of exports.
+ *
+ * <p>The default profile is configured with {@code libgen.modifications.roads} and applies to all
+ * tiles that are not claimed by any of the additional profiles from {@code libgen.profiles}.
+ */
+class LibraryProfile {
+
+  private final String name;
+  private final String regionName;
+  private final Path relativeFolder;
+  private final List<BoundingBox> regions;
+  private final Optional<RoadNetworkModifier> modifier;
+
+  /**
+   * @param name Name of the profile
+   * @param regionName Name of the region in the {@code library.txt}
+   * @param relativeFolder Folder of the profile's road-networks, relative to the library folder
+   * @param regions Regions the profile applies to (empty for the default profile)
+   * @param modifier Modifications of the profile, or empty if modifications are skipped
+   */
+  LibraryProfile(
+      final String name,
+      final String regionName,
+      final Path relativeFolder,
+      final List<BoundingBox> regions,
+      final Optional<RoadNetworkModifier> modifier) {
+    this.name = name;
+    this.regionName = regionName;
+    this.relativeFolder = relativeFolder;
+    this.regions = List.copyOf(regions);
+    this.modifier = modifier;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  String getRegionName() {
+    return regionName;
+  }
+
+  Path getRelativeFolder() {
+    return relativeFolder;
+  }
+
+  Optional<RoadNetworkModifier> getModifier() {
+    return modifier;
+  }
+
+  /**
+   * @param tile Tile to check
+   * @return {@code true} if the tile lies in one of the profile's regions
+   */
+  boolean covers(final Tile tile) {
+    return regions.stream().anyMatch(region -> region.contains(tile));
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
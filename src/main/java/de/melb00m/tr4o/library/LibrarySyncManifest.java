@@ -0,0 +1,190 @@
+package de.melb00m.tr4o.library;
+
+import de.melb00m.tr4o.exceptions.Exceptions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Records the state of the source- and target-files of the roads-library at the time it was last
+ * created, so that a later regeneration can skip all files whose source did not change.
+ *
+ * <p>The manifest is a simple tab-separated text-file. Its first line holds a fingerprint of the
+ * settings the library was created with; if the settings differ, the whole manifest is ignored.
+ */
+class LibrarySyncManifest {
+
+  private static final Logger LOG = LogManager.getLogger(LibrarySyncManifest.class);
+  private static final String FINGERPRINT_PREFIX = "#settings=";
+
+  private final String settingsFingerprint;
+  private final Map<String, Entry> entries;
+
+  private LibrarySyncManifest(final String settingsFingerprint, final Map<String, Entry> entries) {
+    this.settingsFingerprint = settingsFingerprint;
+    this.entries = entries;
+  }
+
+  /**
+   * Creates an empty manifest.
+   *
+   * @param settingsFingerprint Fingerprint of the settings the library is created with
+   * @return Empty manifest
+   */
+  static LibrarySyncManifest empty(final String settingsFingerprint) {
+    return new LibrarySyncManifest(settingsFingerprint, new TreeMap<>());
+  }
+
+  /**
+   * Loads the manifest from the given file.
+   *
+   * @param file Manifest file
+   * @param settingsFingerprint Fingerprint of the current settings
+   * @return Loaded manifest, or an empty one if the file does not exist or was written with
+   *     different settings
+   */
+  static LibrarySyncManifest load(final Path file, final String settingsFingerprint) {
+    if (!Files.exists(file)) {
+      return empty(settingsFingerprint);
+    }
+    try {
+      final var lines = Files.readAllLines(file);
+      if (lines.isEmpty() || !lines.get(0).equals(FINGERPRINT_PREFIX + settingsFingerprint)) {
+        LOG.debug("Library settings have changed since {} was written, ignoring it", file);
+        return empty(settingsFingerprint);
+      }
+      final var entries = new TreeMap<String, Entry>();
+      for (final var line : lines.subList(1, lines.size())) {
+        final var fields = line.split("\t");
+        if (fields.length == 6) {
+          entries.put(
+              fields[0],
+              new Entry(
+                  Long.parseLong(fields[1]),
+                  Long.parseLong(fields[2]),
+                  fields[3],
+                  Long.parseLong(fields[4]),
+                  Long.parseLong(fields[5])));
+        }
+      }
+      return new LibrarySyncManifest(settingsFingerprint, entries);
+    } catch (IOException | NumberFormatException e) {
+      LOG.warn("Library sync-manifest at {} could not be read and will be ignored", file);
+      LOG.debug("Failed to read sync-manifest", e);
+      return empty(settingsFingerprint);
+    }
+  }
+
+  /**
+   * Writes the manifest to the given file, replacing the previous one atomically.
+   *
+   * @param file Manifest file
+   */
+  void save(final Path file) {
+    final var lines = new ArrayList<String>(entries.size() + 1);
+    lines.add(FINGERPRINT_PREFIX + settingsFingerprint);
+    entries.forEach(
+        (path, entry) ->
+            lines.add(
+                String.join(
+                    "\t",
+                    path,
+                    Long.toString(entry.sourceSize),
+                    Long.toString(entry.sourceModified),
+                    entry.sourceChecksum,
+                    Long.toString(entry.targetSize),
+                    Long.toString(entry.targetModified))));
+    try {
+      Files.createDirectories(file.getParent());
+      final var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.write(tempFile, lines);
+      Files.move(
+          tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  Optional<Entry> get(final String relativePath) {
+    return Optional.ofNullable(entries.get(relativePath));
+  }
+
+  /**
+   * Records the current state of a source-file and its target.
+   *
+   * @param relativePath Path of the file relative to the library root
+   * @param sourceFile Source file
+   * @param sourceChecksum Checksum of the source file
+   * @param targetFile Target file
+   */
+  void record(
+      final String relativePath,
+      final Path sourceFile,
+      final String sourceChecksum,
+      final Path targetFile) {
+    try {
+      entries.put(
+          relativePath,
+          new Entry(
+              Files.size(sourceFile),
+              Files.getLastModifiedTime(sourceFile).toMillis(),
+              sourceChecksum,
+              Files.size(targetFile),
+              Files.getLastModifiedTime(targetFile).toMillis()));
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /** State of a single file of the library */
+  static class Entry {
+    private final long sourceSize;
+    private final long sourceModified;
+    private final String sourceChecksum;
+    private final long targetSize;
+    private final long targetModified;
+
+    Entry(
+        final long sourceSize,
+        final long sourceModified,
+        final String sourceChecksum,
+        final long targetSize,
+        final long targetModified) {
+      this.sourceSize = sourceSize;
+      this.sourceModified = sourceModified;
+      this.sourceChecksum = sourceChecksum;
+      this.targetSize = targetSize;
+      this.targetModified = targetModified;
+    }
+
+    String getSourceChecksum() {
+      return sourceChecksum;
+    }
+
+    /**
+     * @param size Current size of the source file
+     * @param modified Current modification time of the source file
+     * @return {@code true} if size and modification time are unchanged
+     */
+    boolean sourceMetadataMatches(final long size, final long modified) {
+      return sourceSize == size && sourceModified == modified;
+    }
+
+    /**
+     * @param size Current size of the target file
+     * @param modified Current modification time of the target file
+     * @return {@code true} if the target file has not been touched since it was created
+     */
+    boolean targetMetadataMatches(final long size, final long modified) {
+      return targetSize == size && targetModified == modified;
+    }
+  }
+}
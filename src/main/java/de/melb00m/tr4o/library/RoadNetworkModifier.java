@@ -0,0 +1,205 @@
+package de.melb00m.tr4o.library;
+
+import com.typesafe.config.Config;
+import de.melb00m.tr4o.misc.Verify;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the transparency-modifications to the lines of a road-network definition ({@code
+ * roads.net}, {@code roads_EU.net}).
+ *
+ * <p>Lines are processed one at a time, so the modifications can be applied while streaming a file
+ * from its source to its target. Lines matching one of the configured patterns are commented out
+ * if they belong to one of the enabled groups.
+ *
+ * <p>If the performance-profile is enabled, its rules additionally remove or thin out further
+ * content (like road-objects or traffic) in its groups: a rule either comments out all matching
+ * lines, or keeps only every n-th matching line of a group. The removed primitives are counted per
+ * group and rule over all files.
+ */
+class RoadNetworkModifier {
+
+  private static final Logger LOG = LogManager.getLogger(RoadNetworkModifier.class);
+  private static final String COMMENT_PREFIX = "#(Transparency4Ortho) ";
+  /** Name under which the lines commented out for transparency are counted */
+  static final String TRANSPARENCY_RULE = "transparency";
+
+  private final Pattern groupPattern;
+  private final Set<String> uncommentEnabledGroups;
+  private final Set<Pattern> uncommentPatterns;
+  private final Set<String> performanceEnabledGroups;
+  private final List<PerformanceRule> performanceRules;
+  private final Map<String, Map<String, Long>> removedPrimitives = new TreeMap<>();
+
+  /** @param config The {@code libgen.modifications.roads}-configuration */
+  RoadNetworkModifier(final Config config) {
+    this.groupPattern = Pattern.compile(config.getString("uncomment.groups-regex"));
+    this.uncommentEnabledGroups = Set.copyOf(config.getStringList("uncomment.groups-enabled"));
+    this.uncommentPatterns = compilePatterns(config.getStringList("uncomment.lines-matching"));
+    final var performance = config.getConfig("performance");
+    this.performanceEnabledGroups = Set.copyOf(performance.getStringList("groups-enabled"));
+    this.performanceRules =
+        performance.getBoolean("enabled")
+            ? performance.getConfigList("rules").stream()
+                .filter(rule -> rule.getBoolean("enabled"))
+                .map(PerformanceRule::new)
+                .collect(Collectors.toUnmodifiableList())
+            : List.of();
+  }
+
+  private static Set<Pattern> compilePatterns(final List<String> regexes) {
+    return regexes.stream().map(Pattern::compile).collect(Collectors.toUnmodifiableSet());
+  }
+
+  /** @return {@code true} if any rule of the performance-profile is enabled */
+  boolean isPerformanceProfileEnabled() {
+    return !performanceRules.isEmpty();
+  }
+
+  /**
+   * @return Number of primitives removed so far, mapped against the name of the rule that removed
+   *     them, per group
+   */
+  synchronized Map<String, Map<String, Long>> getRemovedPrimitives() {
+    final var copy = new TreeMap<String, Map<String, Long>>();
+    removedPrimitives.forEach((group, counts) -> copy.put(group, Map.copyOf(counts)));
+    return copy;
+  }
+
+  private synchronized void countRemoved(final String group, final String rule) {
+    removedPrimitives.computeIfAbsent(group, key -> new TreeMap<>()).merge(rule, 1L, Long::sum);
+  }
+
+  /** Rule of the performance-profile */
+  private static final class PerformanceRule {
+
+    private final String name;
+    private final Set<Pattern> patterns;
+    /** Every n-th matching line is kept, {@code 0} removes all of them */
+    private final int keepEvery;
+
+    private PerformanceRule(final Config config) {
+      this.name = config.getString("name");
+      this.patterns = compilePatterns(config.getStringList("lines-matching"));
+      final var action = config.getString("action");
+      switch (action) {
+        case "remove":
+          this.keepEvery = 0;
+          break;
+        case "thin":
+          this.keepEvery = config.getInt("keep-every");
+          Verify.withErrorMessage(
+                  "Performance-rule %s must keep at least every 2nd line: %d", name, keepEvery)
+              .argument(keepEvery >= 2);
+          break;
+        default:
+          throw new IllegalArgumentException(
+              String.format("Unknown action '%s' of performance-rule %s", action, name));
+      }
+    }
+
+    private boolean matches(final String line) {
+      return patterns.stream().anyMatch(pattern -> pattern.matcher(line).matches());
+    }
+
+    /**
+     * @param index Index of the matching line within its group (starting at {@code 0})
+     * @return {@code true} if the line is removed
+     */
+    private boolean removes(final int index) {
+      return keepEvery == 0 || index % keepEvery != 0;
+    }
+  }
+
+  /**
+   * Starts the modification of a single file.
+   *
+   * @param file File that is modified (used for logging only)
+   * @return Modification holding the state for this file
+   */
+  FileModification forFile(final Path file) {
+    return new FileModification(file);
+  }
+
+  /** State of the modification of a single file, which has to be fed line by line. */
+  class FileModification {
+
+    private final Path file;
+    private final List<String> groups = new ArrayList<>();
+    private final int[] performanceMatches = new int[performanceRules.size()];
+    private String currentGroup = "";
+    private boolean uncommentEnabledBlock;
+    private boolean performanceEnabledBlock;
+    private int lineNo;
+    private int changedLines;
+
+    private FileModification(final Path file) {
+      this.file = file;
+    }
+
+    /**
+     * Modifies the next line of the file.
+     *
+     * @param line Line as read from the source
+     * @return Line to be written to the target
+     */
+    String apply(final String line) {
+      lineNo++;
+      final var matcher = groupPattern.matcher(line);
+      if (matcher.matches()) {
+        currentGroup = matcher.group("groupName");
+        groups.add(currentGroup);
+        uncommentEnabledBlock = uncommentEnabledGroups.contains(currentGroup);
+        performanceEnabledBlock = performanceEnabledGroups.contains(currentGroup);
+        Arrays.fill(performanceMatches, 0);
+      }
+      final var rule = findRemovingRule(line);
+      if (rule.isEmpty()) {
+        return line;
+      }
+      countRemoved(currentGroup, rule.get());
+      final var newLine = COMMENT_PREFIX + line;
+      changedLines++;
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("Line {} in {} changed from '{}' to '{}'", lineNo, file, line, newLine);
+      }
+      return newLine;
+    }
+
+    private Optional<String> findRemovingRule(final String line) {
+      if (uncommentEnabledBlock
+          && uncommentPatterns.stream().anyMatch(pattern -> pattern.matcher(line).matches())) {
+        return Optional.of(TRANSPARENCY_RULE);
+      }
+      if (performanceEnabledBlock) {
+        for (var idx = 0; idx < performanceRules.size(); idx++) {
+          final var rule = performanceRules.get(idx);
+          if (rule.matches(line)) {
+            return rule.removes(performanceMatches[idx]++)
+                ? Optional.of(rule.name)
+                : Optional.empty();
+          }
+        }
+      }
+      return Optional.empty();
+    }
+
+    /** Finishes the modification of the file. */
+    void complete() {
+      LOG.trace("Groups identified in file {}: {}", file, groups);
+      LOG.debug("{} lines modified in {}", changedLines, file);
+    }
+  }
+}
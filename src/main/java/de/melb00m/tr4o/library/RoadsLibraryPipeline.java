@@ -0,0 +1,304 @@
+package de.melb00m.tr4o.library;
+
+import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.helper.FileHelper;
+import de.melb00m.tr4o.helper.OutputHelper;
+import de.melb00m.tr4o.monitoring.FileOperationEvent;
+import de.melb00m.tr4o.monitoring.RoadNetworkModificationEvent;
+import de.melb00m.tr4o.progress.ProgressTracker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the road-networks of all {@link LibraryProfile}s from the X-Plane default roads-library
+ * in a single pass over the source files.
+ *
+ * <p>Every source file is read exactly once: while streaming it to the targets, its checksum is
+ * calculated and the road-network modifications of each profile are applied (if it is a
+ * modification target). The checksum of each file is handed to the caller as soon as the file is
+ * written, so a mismatch can abort the run before the remaining files are copied. Removing the
+ * output in that case is up to the caller.
+ *
+ * <p>Files that are not modified are identical for all profiles. They are written only once into a
+ * content-addressed store (named by their checksum) and hard-linked into the folders of the
+ * profiles, so each additional profile only costs the size of its modified files.
+ */
+class RoadsLibraryPipeline {
+
+  private static final Logger LOG = LogManager.getLogger(RoadsLibraryPipeline.class);
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path sourceFolder;
+  private final Set<Path> excludes;
+  private final Set<Path> modificationTargets;
+  private final List<LibraryProfile> profiles;
+  private final Path relativeStoreFolder;
+  private final ProgressTracker progress;
+
+  /**
+   * @param sourceFolder X-Plane default roads-library
+   * @param excludes Source files that are not copied
+   * @param modificationTargets Files (relative to the source folder) to which the modifications are
+   *     applied
+   * @param profiles Profiles to create the road-networks for
+   * @param relativeStoreFolder Folder of the content-addressed store, relative to the library
+   * @param progress Tracker for the copied bytes
+   */
+  RoadsLibraryPipeline(
+      final Path sourceFolder,
+      final Set<Path> excludes,
+      final Set<Path> modificationTargets,
+      final List<LibraryProfile> profiles,
+      final Path relativeStoreFolder,
+      final ProgressTracker progress) {
+    this.sourceFolder = sourceFolder;
+    this.excludes = excludes;
+    this.modificationTargets = modificationTargets;
+    this.profiles = List.copyOf(profiles);
+    this.relativeStoreFolder = relativeStoreFolder;
+    this.progress = progress;
+  }
+
+  /**
+   * Streams all source files into the profile-folders of the given library.
+   *
+   * <p>Source files for which a target already exists are not processed, and thus are neither
+   * passed to the validator nor part of the result.
+   *
+   * @param libraryRoot Library folder (either the actual library or a staging folder)
+   * @param validator Receives the upper-case MD5-checksum of each processed source file right after
+   *     it was written, and may throw to abort the run
+   * @return Upper-case MD5-checksums of all source files that were processed
+   * @throws IOException If reading or writing fails
+   */
+  Map<Path, String> run(final Path libraryRoot, final BiConsumer<Path, String> validator)
+      throws IOException {
+    final var sourceFiles = listSourceFiles();
+    progress.addEstimate(
+        ProgressTracker.Counter.BYTES_COPIED,
+        sourceFiles.stream().mapToLong(FileHelper::size).sum());
+    final var checksums = new HashMap<Path, String>();
+    for (final var sourceFile : sourceFiles) {
+      final var existingTarget =
+          profiles.stream()
+              .map(profile -> resolveTarget(libraryRoot, profile, sourceFile))
+              .filter(Files::exists)
+              .findFirst();
+      if (existingTarget.isPresent()) {
+        LOG.warn(
+            "File will {} not be copied to {}, as a file with that name already exists",
+            sourceFile,
+            existingTarget.get());
+        continue;
+      }
+      final var checksum = processFile(sourceFile, libraryRoot);
+      validator.accept(sourceFile, checksum);
+      checksums.put(sourceFile, checksum);
+    }
+    return checksums;
+  }
+
+  /** @return All files of the source folder that are part of the library */
+  List<Path> listSourceFiles() throws IOException {
+    try (final var stream = Files.walk(sourceFolder)) {
+      return stream
+          .filter(Files::isRegularFile)
+          .filter(file -> !excludes.contains(file))
+          .collect(Collectors.toList());
+    }
+  }
+
+  List<LibraryProfile> getProfiles() {
+    return profiles;
+  }
+
+  /**
+   * @param sourceFile Source file
+   * @return Path of the source file relative to the source folder, with forward slashes
+   */
+  String relativePath(final Path sourceFile) {
+    return sourceFolder.relativize(sourceFile).toString().replace('\\', '/');
+  }
+
+  /**
+   * Resolves the location of a source file inside the folder of a profile.
+   *
+   * @param libraryRoot Library folder (either the actual library or a staging folder)
+   * @param profile Profile
+   * @param sourceFile Source file
+   * @return Location of the file for the profile
+   */
+  Path resolveTarget(final Path libraryRoot, final LibraryProfile profile, final Path sourceFile) {
+    return libraryRoot
+        .resolve(profile.getRelativeFolder().toString())
+        .resolve(sourceFolder.relativize(sourceFile).toString());
+  }
+
+  /**
+   * Resolves the location of a file with the given checksum in the content-addressed store.
+   *
+   * @param libraryRoot Library folder (either the actual library or a staging folder)
+   * @param checksum Checksum of the file
+   * @return Location in the store
+   */
+  Path resolveStoreEntry(final Path libraryRoot, final String checksum) {
+    return libraryRoot.resolve(relativeStoreFolder.toString()).resolve(checksum);
+  }
+
+  /**
+   * @param sourceFile Source file
+   * @return {@code true} if the file is modified for the profiles (and thus not kept in the store)
+   */
+  boolean isModified(final Path sourceFile) {
+    return modificationTargets.contains(sourceFolder.relativize(sourceFile))
+        && profiles.stream().allMatch(profile -> profile.getModifier().isPresent());
+  }
+
+  /**
+   * Streams a single source file into the folders of all profiles, applying their modifications if
+   * the file is a modification target.
+   *
+   * @param sourceFile File to read
+   * @param libraryRoot Library folder (either the actual library or a staging folder)
+   * @return Upper-case MD5-checksum of the source file
+   * @throws IOException If reading or writing fails
+   */
+  String processFile(final Path sourceFile, final Path libraryRoot) throws IOException {
+    final var digest = newDigest();
+    final var counter = new CountingInputStream(Files.newInputStream(sourceFile));
+    try (final var in = new DigestInputStream(counter, digest)) {
+      if (isModified(sourceFile)) {
+        final var event = new RoadNetworkModificationEvent();
+        event.begin();
+        transform(in, sourceFile, libraryRoot);
+        if (event.shouldCommit()) {
+          event.path = sourceFile.toString();
+          event.bytes = counter.count;
+          event.profiles = profiles.size();
+          event.commit();
+        }
+        return checksumOf(digest);
+      }
+      final var event = new FileOperationEvent();
+      event.begin();
+      final var storeFolder = libraryRoot.resolve(relativeStoreFolder.toString());
+      Files.createDirectories(storeFolder);
+      final var tempFile = Files.createTempFile(storeFolder, "incoming", ".tmp");
+      try {
+        try (final var out = Files.newOutputStream(tempFile)) {
+          in.transferTo(out);
+        }
+        final var checksum = checksumOf(digest);
+        final var storeEntry = resolveStoreEntry(libraryRoot, checksum);
+        if (Files.exists(storeEntry)) {
+          LOG.trace("{} is already present in the store as {}", sourceFile, storeEntry);
+        } else {
+          Files.move(tempFile, storeEntry, StandardCopyOption.ATOMIC_MOVE);
+        }
+        FileHelper.commitFileOperation(event, FileOperationEvent.COPY, storeEntry, counter.count);
+        for (final var profile : profiles) {
+          FileHelper.linkOrCopy(storeEntry, resolveTarget(libraryRoot, profile, sourceFile));
+        }
+        return checksum;
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+    }
+  }
+
+  private void transform(final InputStream in, final Path sourceFile, final Path libraryRoot)
+      throws IOException {
+    final var reader =
+        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    final var modifications = new ArrayList<RoadNetworkModifier.FileModification>();
+    final var writers = new ArrayList<BufferedWriter>();
+    try {
+      for (final var profile : profiles) {
+        final var targetFile = resolveTarget(libraryRoot, profile, sourceFile);
+        Files.createDirectories(targetFile.getParent());
+        modifications.add(profile.getModifier().orElseThrow().forFile(targetFile));
+        writers.add(
+            new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(targetFile), StandardCharsets.UTF_8),
+                BUFFER_SIZE));
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        for (var idx = 0; idx < writers.size(); idx++) {
+          final var writer = writers.get(idx);
+          writer.write(modifications.get(idx).apply(line));
+          writer.newLine();
+        }
+      }
+    } finally {
+      for (final var writer : writers) {
+        writer.close();
+      }
+    }
+    modifications.forEach(RoadNetworkModifier.FileModification::complete);
+  }
+
+  private static String checksumOf(final MessageDigest digest) {
+    return OutputHelper.bytesToHex(digest.digest()).toUpperCase();
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /** Counts the bytes read from a source file and reports them to the progress tracker. */
+  private class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    private CountingInputStream(final InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final var read = super.read();
+      if (read >= 0) {
+        count++;
+        progress.increment(ProgressTracker.Counter.BYTES_COPIED);
+      }
+      return read;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      final var read = super.read(b, off, len);
+      if (read > 0) {
+        count += read;
+        progress.add(ProgressTracker.Counter.BYTES_COPIED, read);
+      }
+      return read;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package de.melb00m.tr4o.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Flight-recorder event for the enumeration of the DSF-files of an ortho-scenery. */
+@Name("de.melb00m.tr4o.DsfEnumeration")
+@Label("DSF Enumeration")
+@Category({"Transparency4Ortho", "Scanner"})
+@Description("Enumeration of the DSF-files in the Earth nav data of an ortho-scenery")
+@StackTrace(false)
+public class DsfEnumerationEvent extends Event {
+
+  @Label("Path")
+  public String path;
+
+  @Label("Files Visited")
+  public long filesVisited;
+
+  @Label("DSF-Files")
+  public long dsfFiles;
+}
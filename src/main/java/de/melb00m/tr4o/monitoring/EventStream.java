@@ -0,0 +1,289 @@
+package de.melb00m.tr4o.monitoring;
+
+import de.melb00m.tr4o.progress.ProgressTracker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream of structured events for front-ends wrapping the application ({@code --events ndjson}),
+ * written as one JSON-object per line as soon as the events happen.
+ *
+ * <p>Emitting an event only puts it into an unbounded queue, so the threads doing the actual work
+ * never wait for the output; the events are encoded and written by a separate thread, which
+ * flushes the output whenever the queue runs empty. Besides the events emitted explicitly, the
+ * counters of the {@link ProgressTracker} are sampled periodically and emitted as {@code
+ * progress}-events when they have changed.
+ *
+ * <p>Every event has the fields {@code time} and {@code event} (its type), followed by the fields
+ * given when emitting it. Paths, tiles and other objects are written as strings. Events that were
+ * already encoded by the stream of another process (like a worker of a distributed scan) are
+ * passed on as they are.
+ */
+public class EventStream implements AutoCloseable {
+
+  private static final Logger LOG = LogManager.getLogger(EventStream.class);
+  private static final EventStream NONE = new EventStream();
+  private static final long SAMPLE_INTERVAL_MILLIS = 500;
+  private static final Event END = new Event(null, null, null, null);
+
+  private final BlockingQueue<Event> queue;
+  private final Writer writer;
+  private final Thread writerThread;
+  private final ProgressTracker tracker;
+  private final ScheduledExecutorService sampler;
+  private final Map<ProgressTracker.Counter, Long> sampled =
+      new EnumMap<>(ProgressTracker.Counter.class);
+  private volatile boolean failed;
+
+  private EventStream() {
+    this.queue = null;
+    this.writer = null;
+    this.writerThread = null;
+    this.tracker = null;
+    this.sampler = null;
+  }
+
+  private EventStream(final Writer writer, final ProgressTracker tracker) {
+    this.queue = new LinkedBlockingQueue<>();
+    this.writer = writer;
+    this.tracker = tracker;
+    this.writerThread = new Thread(this::writeEvents, "event-stream");
+    writerThread.setDaemon(true);
+    writerThread.start();
+    if (tracker == null) {
+      this.sampler = null;
+      return;
+    }
+    this.sampler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final var thread = new Thread(runnable, "event-stream-progress");
+              thread.setDaemon(true);
+              return thread;
+            });
+    sampler.scheduleAtFixedRate(
+        this::emitProgress, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /** @return Stream that discards all events */
+  public static EventStream none() {
+    return NONE;
+  }
+
+  /**
+   * Starts a stream writing the events as NDJSON.
+   *
+   * @param out Output the events are written to
+   * @param tracker Tracker whose counters are emitted as progress
+   * @return Running stream, which must be closed at the end of the run
+   */
+  public static EventStream ndjson(final OutputStream out, final ProgressTracker tracker) {
+    return new EventStream(
+        new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), tracker);
+  }
+
+  /**
+   * Starts a stream writing the events as NDJSON, without emitting any progress.
+   *
+   * @param writer Writer the events are written to, one line per event
+   * @return Running stream, which must be closed at the end of the run
+   */
+  public static EventStream ndjson(final Writer writer) {
+    return new EventStream(writer, null);
+  }
+
+  /** @return {@code true} if the events are written somewhere */
+  public boolean isEnabled() {
+    return queue != null;
+  }
+
+  /**
+   * Emits an event. Collections given as values must not be changed afterwards.
+   *
+   * @param type Type of the event
+   * @param fields Names and values of the event's fields, alternating
+   */
+  public void emit(final String type, final Object... fields) {
+    if (queue != null && !failed) {
+      queue.add(new Event(Instant.now(), type, fields, null));
+    }
+  }
+
+  /**
+   * Emits an event that was already encoded by the stream of another process.
+   *
+   * @param encoded Event as a single JSON-object
+   */
+  public void forward(final String encoded) {
+    if (queue != null && !failed) {
+      queue.add(new Event(null, null, null, encoded));
+    }
+  }
+
+  /** Emits the counters of the progress-tracker that have changed since they were last emitted. */
+  public synchronized void emitProgress() {
+    if (queue == null || tracker == null) {
+      return;
+    }
+    final var changed = new ArrayList<Object>();
+    for (final var counter : ProgressTracker.Counter.values()) {
+      final var value = tracker.get(counter);
+      final var previous = sampled.put(counter, value);
+      if (previous == null ? value != 0 : previous != value) {
+        changed.add(counter.name().toLowerCase(Locale.ROOT));
+        changed.add(value);
+      }
+    }
+    if (!changed.isEmpty()) {
+      emit("progress", changed.toArray());
+    }
+  }
+
+  private void writeEvents() {
+    final var batch = new ArrayList<Event>();
+    try {
+      while (true) {
+        batch.add(queue.take());
+        queue.drainTo(batch);
+        for (final var event : batch) {
+          if (event == END) {
+            writer.flush();
+            return;
+          }
+          writer.write(event.encoded != null ? event.encoded : encode(event));
+          writer.write('\n');
+        }
+        writer.flush();
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      LOG.debug("Failed to write events, no further events are written", e);
+      failed = true;
+      queue.clear();
+    }
+  }
+
+  private static String encode(final Event event) {
+    final var json = new StringBuilder(128);
+    json.append("{\"time\":");
+    appendValue(json, event.time.toString());
+    json.append(",\"event\":");
+    appendValue(json, event.type);
+    for (var idx = 0; idx + 1 < event.fields.length; idx += 2) {
+      json.append(',');
+      appendValue(json, String.valueOf(event.fields[idx]));
+      json.append(':');
+      appendValue(json, event.fields[idx + 1]);
+    }
+    return json.append('}').toString();
+  }
+
+  private static void appendValue(final StringBuilder json, final Object value) {
+    if (value == null) {
+      json.append("null");
+    } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+      json.append(value);
+    } else if (value instanceof Number) {
+      final var number = ((Number) value).doubleValue();
+      json.append(Double.isFinite(number) ? String.valueOf(number) : "null");
+    } else if (value instanceof Collection) {
+      json.append('[');
+      var first = true;
+      for (final var element : (Collection<?>) value) {
+        if (!first) {
+          json.append(',');
+        }
+        appendValue(json, element);
+        first = false;
+      }
+      json.append(']');
+    } else {
+      appendString(json, value.toString());
+    }
+  }
+
+  private static void appendString(final StringBuilder json, final String value) {
+    json.append('"');
+    for (var idx = 0; idx < value.length(); idx++) {
+      final var chr = value.charAt(idx);
+      switch (chr) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (chr < 0x20) {
+            json.append(String.format("\\u%04x", (int) chr));
+          } else {
+            json.append(chr);
+          }
+      }
+    }
+    json.append('"');
+  }
+
+  /** Writes all pending events and ends the stream. */
+  @Override
+  public void close() {
+    if (queue == null) {
+      return;
+    }
+    if (sampler != null) {
+      sampler.shutdownNow();
+    }
+    queue.add(END);
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Event waiting to be written */
+  private static final class Event {
+
+    private final Instant time;
+    private final String type;
+    private final Object[] fields;
+    private final String encoded;
+
+    private Event(
+        final Instant time, final String type, final Object[] fields, final String encoded) {
+      this.time = time;
+      this.type = type;
+      this.fields = fields;
+      this.encoded = encoded;
+    }
+  }
+}
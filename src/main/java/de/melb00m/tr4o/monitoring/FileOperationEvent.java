@@ -0,0 +1,33 @@
+package de.melb00m.tr4o.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Flight-recorder event for a single file-operation (copy, hash or delete). */
+@Name("de.melb00m.tr4o.FileOperation")
+@Label("File Operation")
+@Category({"Transparency4Ortho", "Files"})
+@Description("Copy, hash or delete of a file")
+@StackTrace(false)
+public class FileOperationEvent extends Event {
+
+  public static final String COPY = "copy";
+  public static final String LINK = "link";
+  public static final String HASH = "hash";
+  public static final String DELETE = "delete";
+
+  @Label("Operation")
+  public String operation;
+
+  @Label("Path")
+  public String path;
+
+  @Label("Bytes")
+  @DataAmount
+  public long bytes;
+}
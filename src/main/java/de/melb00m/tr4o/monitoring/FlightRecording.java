@@ -0,0 +1,77 @@
+package de.melb00m.tr4o.monitoring;
+
+import de.melb00m.tr4o.exceptions.Exceptions;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * Java Flight Recorder recording of a single run, including the Transparency4Ortho events.
+ *
+ * <p>The events are committed only while a recording is active. Otherwise the event-objects are
+ * still created (unless the JIT can prove they do not escape) and any data gathered for their
+ * fields is wasted, so code that has to collect data just for an event checks {@link
+ * Event#isEnabled()} first.
+ */
+public class FlightRecording implements AutoCloseable {
+
+  private static final Logger LOG = LogManager.getLogger(FlightRecording.class);
+  private static final FlightRecording NONE = new FlightRecording(null, null);
+  private static final List<Class<? extends Event>> EVENTS =
+      List.of(
+          PackClassificationEvent.class,
+          DsfEnumerationEvent.class,
+          FileOperationEvent.class,
+          RoadNetworkModificationEvent.class,
+          LibraryDefinitionEvent.class);
+
+  private final Recording recording;
+  private final Path destination;
+
+  private FlightRecording(final Recording recording, final Path destination) {
+    this.recording = recording;
+    this.destination = destination;
+  }
+
+  /**
+   * Starts a recording with the JDK's default settings plus all Transparency4Ortho events.
+   *
+   * @param destination File the recording is written to when it is closed
+   * @return Running recording
+   */
+  public static FlightRecording start(final Path destination) {
+    try {
+      final var recording = new Recording(Configuration.getConfiguration("default"));
+      recording.setName("Transparency4Ortho");
+      EVENTS.forEach(event -> recording.enable(event).withoutThreshold());
+      recording.setDestination(destination);
+      recording.start();
+      LOG.debug("Flight recording started, will be written to {}", destination);
+      return new FlightRecording(recording, destination);
+    } catch (IOException | ParseException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /** @return Recording that does nothing */
+  public static FlightRecording none() {
+    return NONE;
+  }
+
+  @Override
+  public void close() {
+    if (recording == null) {
+      return;
+    }
+    recording.stop();
+    recording.close();
+    LOG.info("Flight recording written to {}", destination);
+  }
+}
@@ -0,0 +1,30 @@
+package de.melb00m.tr4o.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight-recorder event for writing the {@code library.txt} of the Transparency4Ortho library.
+ */
+@Name("de.melb00m.tr4o.LibraryDefinition")
+@Label("Library Definition")
+@Category({"Transparency4Ortho", "Library"})
+@Description("Generation of the library.txt")
+@StackTrace(false)
+public class LibraryDefinitionEvent extends Event {
+
+  @Label("Path")
+  public String path;
+
+  @Label("Region-Rects")
+  public int regionRects;
+
+  @Label("Bytes")
+  @DataAmount
+  public long bytes;
+}
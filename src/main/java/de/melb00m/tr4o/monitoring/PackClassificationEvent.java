@@ -0,0 +1,31 @@
+package de.melb00m.tr4o.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Flight-recorder event for the classification of a scenery-pack as ortho-scenery or not. */
+@Name("de.melb00m.tr4o.PackClassification")
+@Label("Pack Classification")
+@Category({"Transparency4Ortho", "Scanner"})
+@Description("Classification of a scenery-pack as ortho-scenery")
+@StackTrace(false)
+public class PackClassificationEvent extends Event {
+
+  @Label("Path")
+  public String path;
+
+  @Label("Ortho-Scenery")
+  public boolean orthoScenery;
+
+  @Label("Rule")
+  @Description("Detection rule that decided the classification")
+  public String rule;
+
+  @Label("File-System Calls")
+  @Description("Directory-listings and attribute-reads needed for the classification")
+  public int fileSystemCalls;
+}
@@ -0,0 +1,28 @@
+package de.melb00m.tr4o.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Flight-recorder event for the modification of a road-network file of the library. */
+@Name("de.melb00m.tr4o.RoadNetworkModification")
+@Label("Road-Network Modification")
+@Category({"Transparency4Ortho", "Library"})
+@Description("Transparency-modification of a road-network file for all library profiles")
+@StackTrace(false)
+public class RoadNetworkModificationEvent extends Event {
+
+  @Label("Path")
+  public String path;
+
+  @Label("Bytes")
+  @DataAmount
+  public long bytes;
+
+  @Label("Profiles")
+  public int profiles;
+}
@@ -0,0 +1,195 @@
+package de.melb00m.tr4o.progress;
+
+import com.typesafe.config.Config;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the file-operations and bytes per second of the application ({@code --background}), so
+ * that it does not compete with X-Plane streaming its own scenery from the same storage.
+ *
+ * <p>All I/O of the application is already accounted in the {@link ProgressTracker}, which hands
+ * every visited file and every byte read or written to the throttle. Each kind of I/O has a
+ * token-bucket, filled at the allowed rate up to one second worth of I/O: a thread takes the
+ * tokens for the I/O it just did and sleeps until the bucket has refilled, if it went below zero.
+ *
+ * <p>The throttle backs off on its own while the storage is busy: the time a thread takes from
+ * one file-operation to the next (without the time it slept in the throttle) is averaged, and
+ * whenever this latency exceeds a multiple of the baseline, the rates are halved. Once the latency
+ * is back to normal, they recover in small steps up to the configured limits. The baseline is the
+ * lowest latency of the last minute or so, rather than of the whole run, so that it follows the
+ * storage when the application moves on to a slower one (or the first samples were served from a
+ * cache).
+ */
+public final class IoThrottle {
+
+  private static final Logger LOG = LogManager.getLogger(IoThrottle.class);
+  private static final IoThrottle UNLIMITED = new IoThrottle();
+  /** File-operations further apart than this were interrupted by other work, not by the storage */
+  private static final long MAX_LATENCY_SAMPLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final int WARM_UP_SAMPLES = 32;
+  private static final double LATENCY_SMOOTHING = 0.1;
+  private static final long ADJUSTMENT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final double RECOVERY_STEP = 0.1;
+  /** Number of adjustment-intervals the baseline latency is the lowest of */
+  private static final int BASELINE_INTERVALS = 60;
+
+  private final TokenBucket operations;
+  private final TokenBucket bytes;
+  private final double backoffFactor;
+  private final double minRateFraction;
+  private final ThreadLocal<Long> lastOperation = new ThreadLocal<>();
+  private double averageLatency;
+  private final double[] lowestLatencyPerInterval = new double[BASELINE_INTERVALS];
+  private int intervals;
+  private double lowestLatency = Double.MAX_VALUE;
+  private int latencySamples;
+  private double rateFraction = 1;
+  private long lastAdjustment = System.nanoTime();
+
+  private IoThrottle() {
+    this.operations = null;
+    this.bytes = null;
+    this.backoffFactor = 0;
+    this.minRateFraction = 0;
+  }
+
+  private IoThrottle(final Config config) {
+    this.operations = new TokenBucket(config.getDouble("max-operations-per-second"));
+    this.bytes = new TokenBucket(config.getBytes("max-bytes-per-second"));
+    this.backoffFactor = config.getDouble("latency-backoff-factor");
+    this.minRateFraction = config.getDouble("min-rate-fraction");
+  }
+
+  /** @return Throttle that never limits */
+  public static IoThrottle unlimited() {
+    return UNLIMITED;
+  }
+
+  /**
+   * @param config Configuration of the throttle ({@code general.background})
+   * @return Throttle limiting the I/O as configured
+   */
+  public static IoThrottle of(final Config config) {
+    return new IoThrottle(config);
+  }
+
+  /** @return {@code true} if this throttle limits the I/O */
+  public boolean isLimiting() {
+    return operations != null;
+  }
+
+  /** @return Fraction of the configured rates currently allowed, lowered by the back-off */
+  public synchronized double getRateFraction() {
+    return rateFraction;
+  }
+
+  /**
+   * Accounts a number of file-operations the current thread has done, and waits if they exceed the
+   * allowed rate.
+   *
+   * @param count Number of file-operations
+   */
+  void operations(final long count) {
+    if (!isLimiting()) {
+      return;
+    }
+    final var now = System.nanoTime();
+    final var previous = lastOperation.get();
+    if (previous != null && now - previous < MAX_LATENCY_SAMPLE_NANOS) {
+      observeLatency((now - previous) / (double) count, now);
+    }
+    pause(operations.take(count, getRateFraction()));
+    lastOperation.set(System.nanoTime());
+  }
+
+  /**
+   * Accounts a number of bytes the current thread has read or written, and waits if they exceed the
+   * allowed rate.
+   *
+   * @param count Number of bytes
+   */
+  void bytes(final long count) {
+    if (!isLimiting()) {
+      return;
+    }
+    pause(bytes.take(count, getRateFraction()));
+  }
+
+  private synchronized void observeLatency(final double latency, final long now) {
+    averageLatency =
+        latencySamples == 0
+            ? latency
+            : averageLatency + LATENCY_SMOOTHING * (latency - averageLatency);
+    if (++latencySamples < WARM_UP_SAMPLES) {
+      return;
+    }
+    lowestLatency = Math.min(lowestLatency, averageLatency);
+    if (now - lastAdjustment < ADJUSTMENT_INTERVAL_NANOS) {
+      return;
+    }
+    lowestLatencyPerInterval[intervals++ % BASELINE_INTERVALS] = lowestLatency;
+    lowestLatency = Double.MAX_VALUE;
+    final var baseline =
+        Arrays.stream(lowestLatencyPerInterval, 0, Math.min(intervals, BASELINE_INTERVALS))
+            .min()
+            .orElseThrow();
+    final var previous = rateFraction;
+    if (averageLatency > backoffFactor * baseline) {
+      rateFraction = Math.max(minRateFraction, rateFraction / 2);
+    } else {
+      rateFraction = Math.min(1, rateFraction + RECOVERY_STEP);
+    }
+    lastAdjustment = now;
+    if (rateFraction != previous) {
+      LOG.debug(
+          "I/O-latency {} us (baseline {} us), throttling to {}% of the configured rates",
+          String.format("%.1f", averageLatency / 1000),
+          String.format("%.1f", baseline / 1000),
+          Math.round(rateFraction * 100));
+    }
+  }
+
+  private static void pause(final long nanos) {
+    if (nanos <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Token-bucket holding up to one second worth of tokens, which may be overdrawn */
+  private static final class TokenBucket {
+
+    private final double ratePerSecond;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    private TokenBucket(final double ratePerSecond) {
+      this.ratePerSecond = ratePerSecond;
+      this.tokens = ratePerSecond;
+    }
+
+    /**
+     * Takes tokens from the bucket.
+     *
+     * @param count Number of tokens
+     * @param rateFraction Fraction of the rate the bucket is currently refilled with
+     * @return Nanoseconds to wait until the bucket is no longer overdrawn
+     */
+    private synchronized long take(final long count, final double rateFraction) {
+      final var rate = ratePerSecond * rateFraction;
+      final var now = System.nanoTime();
+      tokens = Math.min(rate, tokens + rate * (now - lastRefill) / TimeUnit.SECONDS.toNanos(1));
+      lastRefill = now;
+      tokens -= count;
+      return tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+}
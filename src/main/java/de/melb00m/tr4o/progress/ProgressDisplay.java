@@ -0,0 +1,115 @@
+package de.melb00m.tr4o.progress;
+
+import de.melb00m.tr4o.helper.OutputHelper;
+import me.tongfei.progressbar.ProgressBar;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Console progress-bar that displays a counter of a {@link ProgressTracker}.
+ *
+ * <p>The display samples the counter periodically from its own thread, so the threads doing the
+ * actual work never touch the progress-bar. Operations that run repeatedly should {@link
+ * ProgressTracker#reset(ProgressTracker.Counter) reset} their counters before opening a display.
+ *
+ * @see OutputHelper#maybeShowProgress(String, ProgressTracker, ProgressTracker.Counter,
+ *     org.apache.logging.log4j.Level, de.melb00m.tr4o.app.Transparency4Ortho)
+ */
+public class ProgressDisplay implements AutoCloseable {
+
+  private static final long SAMPLE_INTERVAL_MILLIS = 250;
+  private static final ProgressDisplay NONE = new ProgressDisplay();
+
+  private final ProgressTracker tracker;
+  private final ProgressTracker.Counter counter;
+  private final ProgressBar progressBar;
+  private final ScheduledExecutorService sampler;
+  private Supplier<String> extraMessage;
+
+  private ProgressDisplay() {
+    this.tracker = null;
+    this.counter = null;
+    this.progressBar = null;
+    this.sampler = null;
+  }
+
+  private ProgressDisplay(
+      final String taskName, final ProgressTracker tracker, final ProgressTracker.Counter counter) {
+    this.tracker = tracker;
+    this.counter = counter;
+    this.progressBar =
+        OutputHelper.getProgressBarBuilder()
+            .setTaskName(taskName)
+            .setUnit(" " + counter.getUnit(), counter.getUnitSize())
+            .setInitialMax(-1)
+            .build();
+    this.sampler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final var thread = new Thread(runnable, "progress-" + taskName);
+              thread.setDaemon(true);
+              return thread;
+            });
+    sampler.scheduleAtFixedRate(this::sample, 0, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Opens a display for the given counter.
+   *
+   * @param taskName Name of the task shown with the bar
+   * @param tracker Tracker holding the counter
+   * @param counter Counter to display
+   * @return Display, which must be closed when the task is done
+   */
+  public static ProgressDisplay open(
+      final String taskName, final ProgressTracker tracker, final ProgressTracker.Counter counter) {
+    return new ProgressDisplay(taskName, tracker, counter);
+  }
+
+  /** @return Display that shows nothing */
+  public static ProgressDisplay none() {
+    return NONE;
+  }
+
+  /**
+   * Sets a message that is shown next to the progress-bar and refreshed on every sample.
+   *
+   * @param message Supplier of the message
+   * @return This display
+   */
+  public ProgressDisplay withExtraMessage(final Supplier<String> message) {
+    if (this != NONE) {
+      this.extraMessage = message;
+    }
+    return this;
+  }
+
+  private void sample() {
+    final var estimate = tracker.getEstimate(counter);
+    final var current = tracker.get(counter);
+    // the bar must never run past its total, even if the estimate turns out to be too low
+    progressBar.maxHint(estimate > 0 ? Math.max(estimate, current) : -1);
+    progressBar.stepTo(current);
+    if (null != extraMessage) {
+      progressBar.setExtraMessage(extraMessage.get());
+    }
+  }
+
+  @Override
+  public void close() {
+    if (this == NONE) {
+      return;
+    }
+    sampler.shutdownNow();
+    try {
+      sampler.awaitTermination(SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    sample();
+    progressBar.close();
+  }
+}
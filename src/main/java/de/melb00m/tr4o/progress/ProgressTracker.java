@@ -0,0 +1,139 @@
+package de.melb00m.tr4o.progress;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe collection of progress-counters for the long-running operations of the application.
+ *
+ * <p>All counters are striped ({@link LongAdder}), so any number of worker-threads can report
+ * progress without contending for a shared value. Besides the actual progress, each counter holds
+ * an estimated total that is typically reported up front by the operation before it starts
+ * working.
+ *
+ * @see ProgressDisplay
+ */
+public class ProgressTracker {
+
+  /** Counters tracked for the different operations */
+  public enum Counter {
+    PACKS_SCANNED("packs", 1),
+    FILES_VISITED("files", 1),
+    BYTES_HASHED("MB", 1 << 20),
+    BYTES_COPIED("MB", 1 << 20);
+
+    private final String unit;
+    private final long unitSize;
+
+    Counter(final String unit, final long unitSize) {
+      this.unit = unit;
+      this.unitSize = unitSize;
+    }
+
+    public String getUnit() {
+      return unit;
+    }
+
+    public long getUnitSize() {
+      return unitSize;
+    }
+  }
+
+  private final Map<Counter, LongAdder> progress = new EnumMap<>(Counter.class);
+  private final Map<Counter, LongAdder> estimates = new EnumMap<>(Counter.class);
+  private volatile IoThrottle throttle = IoThrottle.unlimited();
+
+  public ProgressTracker() {
+    for (final var counter : Counter.values()) {
+      progress.put(counter, new LongAdder());
+      estimates.put(counter, new LongAdder());
+    }
+  }
+
+  /**
+   * Sets the throttle that the reported file-operations and bytes are passed to, so that the
+   * threads reporting them are slowed down to the throttle's rates.
+   *
+   * @param throttle Throttle for the I/O reported to this tracker
+   */
+  public void setThrottle(final IoThrottle throttle) {
+    this.throttle = throttle;
+  }
+
+  public void increment(final Counter counter) {
+    progress.get(counter).increment();
+    throttle(counter, 1);
+  }
+
+  public void add(final Counter counter, final long amount) {
+    progress.get(counter).add(amount);
+    throttle(counter, amount);
+  }
+
+  /**
+   * Adds progress that was made (and throttled) elsewhere, like in a worker-process, so it is not
+   * passed to the throttle again.
+   *
+   * @param counter Counter to add to
+   * @param amount Amount of progress
+   */
+  public void addReported(final Counter counter, final long amount) {
+    progress.get(counter).add(amount);
+  }
+
+  /**
+   * Reports file-operations that are not part of the progress of any counter (like listing a
+   * folder or reading the attributes of a file), so that they are throttled the same way.
+   *
+   * @param count Number of file-operations
+   */
+  public void fileOperations(final long count) {
+    throttle.operations(count);
+  }
+
+  private void throttle(final Counter counter, final long amount) {
+    switch (counter) {
+      case FILES_VISITED:
+        throttle.operations(amount);
+        break;
+      case BYTES_HASHED:
+      case BYTES_COPIED:
+        throttle.bytes(amount);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Adds to the estimated total of the given counter.
+   *
+   * @param counter Counter to which the estimate applies
+   * @param amount Amount of work that is expected additionally
+   */
+  public void addEstimate(final Counter counter, final long amount) {
+    estimates.get(counter).add(amount);
+  }
+
+  /**
+   * Resets progress and estimated total of the given counters, typically before an operation
+   * starts.
+   *
+   * @param counters Counters to reset
+   */
+  public void reset(final Counter... counters) {
+    for (final var counter : counters) {
+      progress.get(counter).reset();
+      estimates.get(counter).reset();
+    }
+  }
+
+  public long get(final Counter counter) {
+    return progress.get(counter).sum();
+  }
+
+  public long getEstimate(final Counter counter) {
+    return estimates.get(counter).sum();
+  }
+}
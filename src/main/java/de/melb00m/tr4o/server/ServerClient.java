@@ -0,0 +1,93 @@
+package de.melb00m.tr4o.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Sends requests to a resident server.
+ *
+ * @see ServerProtocol
+ */
+public final class ServerClient {
+
+  private static final Logger LOG = LogManager.getLogger(ServerClient.class);
+  private static final int CONNECT_TIMEOUT_MILLIS = 500;
+
+  private final ServerEndpoint endpoint;
+
+  private ServerClient(final ServerEndpoint endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  /**
+   * Finds the server published in the given endpoint file. This only reads the file; a stale file
+   * of a server that is no longer running is detected when sending the request.
+   *
+   * @param endpointFile Endpoint file
+   * @return Client, or empty if no server has published itself
+   */
+  public static Optional<ServerClient> find(final Path endpointFile) {
+    return ServerEndpoint.read(endpointFile).map(ServerClient::new);
+  }
+
+  /**
+   * @param configFingerprint Fingerprint of the configuration of the client
+   * @return {@code true} if the server runs with the same configuration as the client
+   */
+  public boolean servesConfig(final String configFingerprint) {
+    return endpoint.servesConfig(configFingerprint);
+  }
+
+  /**
+   * Sends a request and passes the output of the server to the given consumer.
+   *
+   * @param request Request as defined in {@link ServerProtocol}
+   * @param output Consumer for the output-lines of the server
+   * @return Exit-code of the request, or empty if the server is not reachable
+   */
+  public Optional<Integer> send(final String request, final Consumer<String> output) {
+    try (final var socket = new Socket()) {
+      socket.connect(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), endpoint.getPort()),
+          CONNECT_TIMEOUT_MILLIS);
+      final var writer =
+          new BufferedWriter(
+              new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      writer.write(ServerProtocol.GREETING + " " + endpoint.getToken());
+      writer.newLine();
+      writer.write(request);
+      writer.newLine();
+      writer.flush();
+      final var reader =
+          new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(ServerProtocol.OUTPUT_PREFIX)) {
+          output.accept(line.substring(ServerProtocol.OUTPUT_PREFIX.length()));
+        } else if (line.startsWith(ServerProtocol.EXIT_PREFIX)) {
+          return Optional.of(
+              Integer.parseInt(line.substring(ServerProtocol.EXIT_PREFIX.length()).trim()));
+        }
+      }
+      LOG.debug("Server closed the connection without an exit-code");
+      return Optional.empty();
+    } catch (IOException | NumberFormatException e) {
+      LOG.debug("Resident server on port {} is not reachable", endpoint.getPort(), e);
+      return Optional.empty();
+    }
+  }
+}
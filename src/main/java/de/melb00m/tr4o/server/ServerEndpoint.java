@@ -0,0 +1,157 @@
+package de.melb00m.tr4o.server;
+
+import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.helper.OutputHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Location and access-token of a running resident server, as published in the state-folder of the
+ * X-Plane installation it serves.
+ *
+ * <p>The server only listens on the loopback-interface. The random token keeps other local
+ * processes that cannot read the state-folder from sending requests.
+ */
+public final class ServerEndpoint {
+
+  private static final Logger LOG = LogManager.getLogger(ServerEndpoint.class);
+  private static final String PORT = "port";
+  private static final String TOKEN = "token";
+  private static final String CONFIG = "config";
+  private static final int TOKEN_BYTES = 16;
+
+  private final int port;
+  private final String token;
+  private final String configFingerprint;
+
+  private ServerEndpoint(final int port, final String token, final String configFingerprint) {
+    this.port = port;
+    this.token = token;
+    this.configFingerprint = configFingerprint;
+  }
+
+  /**
+   * Creates a new endpoint with a random token.
+   *
+   * @param port Port the server listens on
+   * @param configFingerprint Fingerprint of the configuration the server runs with
+   * @return New endpoint
+   */
+  public static ServerEndpoint create(final int port, final String configFingerprint) {
+    final var tokenBytes = new byte[TOKEN_BYTES];
+    new SecureRandom().nextBytes(tokenBytes);
+    return new ServerEndpoint(port, OutputHelper.bytesToHex(tokenBytes), configFingerprint);
+  }
+
+  /**
+   * Reads the endpoint published by a server.
+   *
+   * @param file Endpoint file
+   * @return Endpoint, or empty if no server has published one
+   */
+  public static Optional<ServerEndpoint> read(final Path file) {
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    try (final var reader = Files.newBufferedReader(file)) {
+      final var properties = new Properties();
+      properties.load(reader);
+      return Optional.of(
+          new ServerEndpoint(
+              Integer.parseInt(properties.getProperty(PORT)),
+              properties.getProperty(TOKEN),
+              properties.getProperty(CONFIG, "")));
+    } catch (IOException | RuntimeException e) {
+      LOG.debug("Ignoring unreadable server endpoint at {}", file, e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Publishes the endpoint, replacing any previous one atomically.
+   *
+   * @param file Endpoint file
+   */
+  public void publish(final Path file) {
+    final var properties = new Properties();
+    properties.setProperty(PORT, Integer.toString(port));
+    properties.setProperty(TOKEN, token);
+    properties.setProperty(CONFIG, configFingerprint);
+    try {
+      Files.createDirectories(file.getParent());
+      final var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+      try (final var writer = Files.newBufferedWriter(tempFile)) {
+        properties.store(writer, "Transparency4Ortho resident server");
+      }
+      Files.move(
+          tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /**
+   * Removes the published endpoint, if it is still this one.
+   *
+   * @param file Endpoint file
+   */
+  public void withdraw(final Path file) {
+    try {
+      if (read(file).filter(this::equals).isPresent()) {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException e) {
+      LOG.debug("Failed to remove server endpoint at {}", file, e);
+    }
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  String getToken() {
+    return token;
+  }
+
+  /**
+   * @param fingerprint Fingerprint of the configuration of a client
+   * @return {@code true} if the server runs with the same configuration as the client
+   */
+  public boolean servesConfig(final String fingerprint) {
+    return configFingerprint.equals(fingerprint);
+  }
+
+  /**
+   * @param candidate Token sent by a client
+   * @return {@code true} if the token grants access to this endpoint
+   */
+  public boolean accepts(final String candidate) {
+    // compared in constant time, so the token cannot be guessed from the time a rejection takes
+    return candidate != null
+        && MessageDigest.isEqual(
+            token.getBytes(StandardCharsets.UTF_8), candidate.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * port + token.hashCode();
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    final ServerEndpoint that = (ServerEndpoint) o;
+    return port == that.port && token.equals(that.token);
+  }
+}
@@ -0,0 +1,37 @@
+package de.melb00m.tr4o.server;
+
+/**
+ * Line-based protocol between the resident Transparency4Ortho server and its clients.
+ *
+ * <p>A client sends two lines: the greeting together with the server's access-token, followed by
+ * the request (a command, optionally followed by a single argument). The server answers with any
+ * number of output-lines and closes with the exit-code of the request:
+ *
+ * <pre>
+ * &gt; T4O/1 3f2a...
+ * &gt; QUERY 46,5,49,17
+ * &lt; OUT Ortho-coverage for region ...
+ * &lt; EXIT 0
+ * </pre>
+ */
+public final class ServerProtocol {
+
+  public static final String GREETING = "T4O/1";
+  public static final String OUTPUT_PREFIX = "OUT ";
+  public static final String EXIT_PREFIX = "EXIT ";
+
+  /** Reports whether the library is up to date (like {@code --check}) */
+  public static final String STATUS = "STATUS";
+  /** Reports the ortho-coverage of the region given as argument (like {@code --queryRegion}) */
+  public static final String QUERY = "QUERY";
+  /** Generates the library.txt, with argument {@link #REMOVE_EXISTING} to drop previous entries */
+  public static final String GENERATE = "GENERATE";
+  /** Drops the in-memory scan and scans again */
+  public static final String RESCAN = "RESCAN";
+  /** Stops the server */
+  public static final String SHUTDOWN = "SHUTDOWN";
+
+  public static final String REMOVE_EXISTING = "removeExisting";
+
+  private ServerProtocol() {}
+}
@@ -0,0 +1,91 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.misc.Verify;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Rectangular region of tiles, defined by its south-west and north-east corner tiles (both
+ * inclusive).
+ */
+public class BoundingBox {
+
+  private static final Pattern BOX_PATTERN =
+      Pattern.compile("\\s*([+-]?\\d{1,2})\\s*,\\s*([+-]?\\d{1,3})\\s*,\\s*([+-]?\\d{1,2})\\s*,\\s*([+-]?\\d{1,3})\\s*");
+
+  private final Tile southWest;
+  private final Tile northEast;
+
+  public BoundingBox(final Tile southWest, final Tile northEast) {
+    Verify.withErrorMessage("Invalid bounding box from %s to %s", southWest, northEast)
+        .argument(
+            southWest.getLatitude() <= northEast.getLatitude()
+                && southWest.getLongitude() <= northEast.getLongitude());
+    this.southWest = southWest;
+    this.northEast = northEast;
+  }
+
+  /**
+   * Parses a bounding box either from a single tile (e.g. {@code +47+011}) or from the
+   * comma-separated corner coordinates {@code minLat,minLon,maxLat,maxLon} (e.g. {@code
+   * 45,5,55,15}).
+   *
+   * @param box Bounding box definition
+   * @return Parsed bounding box
+   */
+  public static BoundingBox parse(final String box) {
+    final var matcher = BOX_PATTERN.matcher(box);
+    if (matcher.matches()) {
+      return new BoundingBox(
+          new Tile(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))),
+          new Tile(Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4))));
+    }
+    final var tile = new Tile(box.trim());
+    return new BoundingBox(tile, tile);
+  }
+
+  /** @return Bounding box spanning all tiles of the globe */
+  public static BoundingBox world() {
+    return new BoundingBox(new Tile(-90, -180), new Tile(89, 179));
+  }
+
+  public Tile getSouthWest() {
+    return southWest;
+  }
+
+  public Tile getNorthEast() {
+    return northEast;
+  }
+
+  public boolean contains(final Tile tile) {
+    return tile.getLatitude() >= southWest.getLatitude()
+        && tile.getLatitude() <= northEast.getLatitude()
+        && tile.getLongitude() >= southWest.getLongitude()
+        && tile.getLongitude() <= northEast.getLongitude();
+  }
+
+  /** @return Number of tiles inside this bounding box */
+  public int getTileCount() {
+    return (northEast.getLatitude() - southWest.getLatitude() + 1)
+        * (northEast.getLongitude() - southWest.getLongitude() + 1);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(southWest, northEast);
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    final BoundingBox that = (BoundingBox) o;
+    return southWest.equals(that.southWest) && northEast.equals(that.northEast);
+  }
+
+  @Override
+  public String toString() {
+    return southWest + ".." + northEast;
+  }
+}
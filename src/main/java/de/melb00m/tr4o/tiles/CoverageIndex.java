@@ -0,0 +1,141 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.helper.FileHelper;
+import org.apache.commons.collections4.MultiValuedMap;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Grid-based index over the ortho-coverage of a scan, answering spatial queries without iterating
+ * the scan results.
+ *
+ * <p>Every tile of the globe has a slot in a fixed grid holding the ids of the ortho-packs covering
+ * it. Additionally, a summed-area table over the covered tiles allows counting the covered tiles
+ * of any bounding box in constant time.
+ *
+ * @see TilesScannerResult
+ */
+class CoverageIndex {
+
+  private static final int[] NO_PACKS = new int[0];
+  private static final int ROWS = 180;
+  private static final int COLUMNS = 360;
+
+  private final List<Path> packs;
+  private final int[][] tilePacks = new int[Tile.GRID_SIZE][];
+  private final int[] summedArea = new int[(ROWS + 1) * (COLUMNS + 1)];
+
+  CoverageIndex(final MultiValuedMap<Path, Path> orthoFolderToDsfMap) {
+    this.packs = List.copyOf(new TreeSet<>(orthoFolderToDsfMap.keySet()));
+    for (var packId = 0; packId < packs.size(); packId++) {
+      for (final var dsf : orthoFolderToDsfMap.get(packs.get(packId))) {
+        final var tile = new Tile(FileHelper.removeFileExtension(dsf.getFileName().toString()));
+        addPack(tile.toGridIndex(), packId);
+      }
+    }
+    buildSummedArea();
+  }
+
+  private void addPack(final int gridIndex, final int packId) {
+    final var current = tilePacks[gridIndex];
+    if (current == null) {
+      tilePacks[gridIndex] = new int[] {packId};
+      return;
+    }
+    for (final var existing : current) {
+      if (existing == packId) return;
+    }
+    final var extended = new int[current.length + 1];
+    System.arraycopy(current, 0, extended, 0, current.length);
+    extended[current.length] = packId;
+    tilePacks[gridIndex] = extended;
+  }
+
+  private void buildSummedArea() {
+    for (var row = 0; row < ROWS; row++) {
+      var rowSum = 0;
+      for (var col = 0; col < COLUMNS; col++) {
+        rowSum += tilePacks[row * COLUMNS + col] != null ? 1 : 0;
+        summedArea[(row + 1) * (COLUMNS + 1) + col + 1] =
+            summedArea[row * (COLUMNS + 1) + col + 1] + rowSum;
+      }
+    }
+  }
+
+  /**
+   * Counts the covered tiles inside the given box in constant time.
+   *
+   * @param box Region to count
+   * @return Number of ortho-covered tiles inside the region
+   */
+  int countCoveredTiles(final BoundingBox box) {
+    final var row0 = box.getSouthWest().getLatitude() + 90;
+    final var row1 = box.getNorthEast().getLatitude() + 90 + 1;
+    final var col0 = box.getSouthWest().getLongitude() + 180;
+    final var col1 = box.getNorthEast().getLongitude() + 180 + 1;
+    return summedArea[row1 * (COLUMNS + 1) + col1]
+        - summedArea[row0 * (COLUMNS + 1) + col1]
+        - summedArea[row1 * (COLUMNS + 1) + col0]
+        + summedArea[row0 * (COLUMNS + 1) + col0];
+  }
+
+  double getCoveragePercentage(final BoundingBox box) {
+    return countCoveredTiles(box) * 100d / box.getTileCount();
+  }
+
+  Set<Path> findPacks(final BoundingBox box) {
+    if (countCoveredTiles(box) == 0) {
+      return Collections.emptySet();
+    }
+    final var packIds = new BitSet(packs.size());
+    forEachGridIndex(
+        box,
+        idx -> {
+          for (final var packId : packsAt(idx)) packIds.set(packId);
+        });
+    final var result = new LinkedHashSet<Path>();
+    packIds.stream().mapToObj(packs::get).forEach(result::add);
+    return Collections.unmodifiableSet(result);
+  }
+
+  Set<Path> getPacksForTile(final Tile tile) {
+    final var ids = packsAt(tile.toGridIndex());
+    final var result = new LinkedHashSet<Path>(ids.length);
+    for (final var packId : ids) result.add(packs.get(packId));
+    return Collections.unmodifiableSet(result);
+  }
+
+  List<Tile> getUncoveredTiles(final BoundingBox box) {
+    final var uncovered = new ArrayList<Tile>(box.getTileCount() - countCoveredTiles(box));
+    forEachGridIndex(
+        box,
+        idx -> {
+          if (tilePacks[idx] == null) uncovered.add(Tile.fromGridIndex(idx));
+        });
+    return Collections.unmodifiableList(uncovered);
+  }
+
+  private int[] packsAt(final int gridIndex) {
+    final var ids = tilePacks[gridIndex];
+    return ids != null ? ids : NO_PACKS;
+  }
+
+  private static void forEachGridIndex(final BoundingBox box, final IntConsumer consumer) {
+    for (var lat = box.getSouthWest().getLatitude(); lat <= box.getNorthEast().getLatitude(); lat++) {
+      final var rowStart = (lat + 90) * COLUMNS + 180;
+      for (var lon = box.getSouthWest().getLongitude();
+          lon <= box.getNorthEast().getLongitude();
+          lon++) {
+        consumer.accept(rowStart + lon);
+      }
+    }
+  }
+}
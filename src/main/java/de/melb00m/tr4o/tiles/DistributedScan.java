@@ -0,0 +1,426 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.helper.OutputHelper;
+import de.melb00m.tr4o.misc.Verify;
+import de.melb00m.tr4o.monitoring.EventStream;
+import de.melb00m.tr4o.progress.ProgressTracker;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Scan split across several worker-processes ({@code --scanWorkers}), for installations whose
+ * scenery is spread over more storage than a single process can keep busy.
+ *
+ * <p>The coordinator deals the scanned folders out round-robin into one shard per worker, so
+ * neighbouring packs (which tend to reside on the same storage) end up with different workers. Each
+ * worker is a Transparency4Ortho-process started with {@code --scanShard}: it reads the folders of
+ * its shard from its standard-input, classifies and enumerates them with its own {@link
+ * TilesScanner} and writes the tiles of each completed ortho-scenery to its standard-output, one
+ * tab-separated line per DSF-file, followed by whether the shard was scanned completely. In
+ * between, it reports its progress-counters (whenever they changed, at most twice per second) and
+ * the events of its scan, encoded as they would appear in the {@code --events} output:
+ *
+ * <pre>
+ * &lt; T4O-SHARD/2
+ * &lt; EVENT     {"time":"...","event":"pack-classified",...}
+ * &lt; PROGRESS  PACKS_SCANNED  3
+ * &lt; TILE      +47+011  /X-Plane/Custom Scenery/zOrtho4XP_+47+011  /X-Plane/.../+47+011.dsf
+ * &lt; DONE      complete
+ * </pre>
+ *
+ * <p>The coordinator adds the progress of all workers up in its own {@link ProgressTracker} and
+ * passes their events on to its own {@link EventStream}. It passes the tiles of all workers on to
+ * its own listener, so the result is the same as of a scan in a single process - except that a
+ * DSF-file linked into ortho-sceneries of different shards is reported once per shard. Workers on
+ * other machines are started by the commands in {@code overlay-scanner.distributed.remote-workers}.
+ * A worker that fails or ends without completing its shard makes the scan partial, just like a pack
+ * that fails in a single process.
+ */
+public final class DistributedScan {
+
+  private static final Logger LOG = LogManager.getLogger(DistributedScan.class);
+  private static final String GREETING = "T4O-SHARD/2";
+  private static final String TILE = "TILE";
+  private static final String PROGRESS = "PROGRESS";
+  private static final String EVENT = "EVENT";
+  private static final String DONE = "DONE";
+  private static final String COMPLETE = "complete";
+  private static final String PARTIAL = "partial";
+  private static final long PROGRESS_INTERVAL_MILLIS = 500;
+  private static final List<ProgressTracker.Counter> REPORTED_COUNTERS =
+      List.of(ProgressTracker.Counter.PACKS_SCANNED, ProgressTracker.Counter.FILES_VISITED);
+
+  private final Transparency4Ortho command;
+  private final List<Path> folders;
+  private final List<List<String>> workerCommands = new ArrayList<>();
+  private final Object listenerLock = new Object();
+
+  /**
+   * @param command Command of the coordinator
+   * @param folders Scenery-folders to scan
+   * @param localWorkers Number of workers to start on this machine
+   */
+  DistributedScan(
+      final Transparency4Ortho command, final Collection<Path> folders, final int localWorkers) {
+    this.command = command;
+    this.folders = List.copyOf(new TreeSet<>(folders));
+    for (var idx = 0; idx < localWorkers; idx++) {
+      workerCommands.add(localWorkerCommand());
+    }
+    command.config().getList("overlay-scanner.distributed.remote-workers").stream()
+        .map(value -> (List<?>) value.unwrapped())
+        .map(args -> args.stream().map(String::valueOf).collect(Collectors.toList()))
+        .forEach(workerCommands::add);
+    Verify.withErrorMessage(
+            "A distributed scan needs at least one worker, either local (--scanWorkers) or remote")
+        .argument(!workerCommands.isEmpty());
+  }
+
+  private static List<String> localWorkerCommand() {
+    final var workerCommand = new ArrayList<String>();
+    workerCommand.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    Optional.ofNullable(System.getProperty("config.file"))
+        .ifPresent(file -> workerCommand.add("-Dconfig.file=" + file));
+    workerCommand.add("-cp");
+    workerCommand.add(System.getProperty("java.class.path"));
+    workerCommand.add(Transparency4Ortho.class.getName());
+    return workerCommand;
+  }
+
+  /**
+   * Runs the workers and passes the tiles they find on to the listener.
+   *
+   * @param listener Listener receiving the ortho-covered tiles of all workers
+   * @return {@code true} if all workers scanned their shard completely
+   */
+  boolean run(final TileCoverageListener listener) {
+    final var shards = new ArrayList<List<Path>>();
+    workerCommands.forEach(workerCommand -> shards.add(new ArrayList<>()));
+    for (var idx = 0; idx < folders.size(); idx++) {
+      shards.get(idx % shards.size()).add(folders.get(idx));
+    }
+    LOG.info(
+        "Scanning your X-Plane installation for ortho-sceneries with {} workers "
+            + "(this may take a moment)",
+        shards.size());
+    final var progress = command.getProgressTracker();
+    progress.reset(ProgressTracker.Counter.PACKS_SCANNED, ProgressTracker.Counter.FILES_VISITED);
+    progress.addEstimate(ProgressTracker.Counter.PACKS_SCANNED, folders.size());
+    final var executor =
+        Executors.newFixedThreadPool(
+            shards.size(),
+            runnable -> {
+              final var thread = new Thread(runnable, "scan-worker");
+              thread.setDaemon(true);
+              thread.setPriority(command.getWorkerThreadPriority());
+              return thread;
+            });
+    try (final var display =
+        OutputHelper.maybeShowProgress(
+                "Scanning for Orthos",
+                progress,
+                ProgressTracker.Counter.PACKS_SCANNED,
+                Level.TRACE,
+                command)
+            .withExtraMessage(
+                () ->
+                    String.format(
+                        "%d files visited", progress.get(ProgressTracker.Counter.FILES_VISITED)))) {
+      final var results = new ArrayList<CompletableFuture<Boolean>>();
+      for (var idx = 0; idx < shards.size(); idx++) {
+        final var worker = idx + 1;
+        final var workerCommand = new ArrayList<>(workerCommands.get(idx));
+        final var shard = shards.get(idx);
+        results.add(
+            CompletableFuture.supplyAsync(
+                () -> runWorker(worker, workerCommand, shard, listener), executor));
+      }
+      var complete = true;
+      for (final var result : results) {
+        complete &= result.join();
+      }
+      return complete;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private boolean runWorker(
+      final int worker,
+      final List<String> workerCommand,
+      final List<Path> shard,
+      final TileCoverageListener listener) {
+    workerCommand.add(command.getXPlanePath().toAbsolutePath().toString());
+    workerCommand.add("--scanShard");
+    if (command.isBackground()) {
+      workerCommand.add("--background");
+    }
+    command
+        .getTimeBudget()
+        .ifPresent(
+            budget -> {
+              workerCommand.add("--timeBudget");
+              workerCommand.add(Long.toString(budget.toMinutes()));
+            });
+    LOG.debug(
+        "Starting scan-worker {} for {} scenery-folders: {}", worker, shard.size(), workerCommand);
+    final Process process;
+    try {
+      process =
+          new ProcessBuilder(workerCommand).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    } catch (IOException e) {
+      LOG.warn("Scan-worker {} could not be started: {}", worker, e.getMessage());
+      LOG.debug("Failed to start scan-worker", e);
+      return false;
+    }
+    try {
+      sendShard(process.getOutputStream(), shard);
+      final var result = receiveTiles(worker, process.getInputStream(), listener);
+      final var exitCode = process.waitFor();
+      if (result.isEmpty() || exitCode != 0) {
+        LOG.warn(
+            "Scan-worker {} ended with exit-code {} before completing its {} scenery-folders, "
+                + "see its log-file for details",
+            worker,
+            exitCode,
+            shard.size());
+        return false;
+      }
+      if (!result.get()) {
+        LOG.warn(
+            "Scan-worker {} could not scan all of its {} scenery-folders, "
+                + "see its log-file for details",
+            worker,
+            shard.size());
+      }
+      return result.get();
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Scan-worker {} failed: {}", worker, e.getMessage());
+      LOG.debug("Failed to communicate with scan-worker", e);
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      process.destroyForcibly();
+    }
+  }
+
+  private static void sendShard(final OutputStream out, final List<Path> shard)
+      throws IOException {
+    try (final var writer =
+        new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+      for (final var folder : shard) {
+        writer.write(folder.toAbsolutePath().toString());
+        writer.newLine();
+      }
+    }
+  }
+
+  /** @return Whether the worker completed its shard, or empty if it ended without telling */
+  private Optional<Boolean> receiveTiles(
+      final int worker, final InputStream in, final TileCoverageListener listener)
+      throws IOException {
+    final FileSystem fileSystem = command.getFileSystem();
+    final var progress = command.getProgressTracker();
+    final var reported = new EnumMap<ProgressTracker.Counter, Long>(ProgressTracker.Counter.class);
+    try (final var reader =
+        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      var line = reader.readLine();
+      Verify.withErrorMessage("Scan-worker %d sent an unexpected greeting: %s", worker, line)
+          .state(GREETING.equals(line));
+      var dsfFiles = 0;
+      Optional<Boolean> result = Optional.empty();
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(EVENT + "\t")) {
+          command.getEventStream().forward(line.substring(EVENT.length() + 1));
+          continue;
+        }
+        final var fields = line.split("\t");
+        if (fields.length == 3 && PROGRESS.equals(fields[0]) && isReported(fields[1])) {
+          // the worker reports its totals, which may have been throttled there already
+          final var counter = ProgressTracker.Counter.valueOf(fields[1]);
+          final var total = Long.parseLong(fields[2]);
+          progress.addReported(counter, total - reported.getOrDefault(counter, 0L));
+          reported.put(counter, total);
+        } else if (fields.length == 4 && TILE.equals(fields[0])) {
+          final var tile = new Tile(fields[1]);
+          final var orthoFolder = fileSystem.getPath(fields[2]);
+          final var dsfFile = fileSystem.getPath(fields[3]);
+          synchronized (listenerLock) {
+            listener.tileCovered(orthoFolder, dsfFile, tile);
+          }
+          dsfFiles++;
+        } else if (fields.length == 2 && DONE.equals(fields[0])) {
+          result = Optional.of(COMPLETE.equals(fields[1]));
+        } else {
+          LOG.debug("Ignoring unexpected output of scan-worker {}: {}", worker, line);
+        }
+      }
+      LOG.debug("Scan-worker {} reported {} DSF-files", worker, dsfFiles);
+      return result;
+    }
+  }
+
+  private static boolean isReported(final String counterName) {
+    return REPORTED_COUNTERS.stream().anyMatch(counter -> counter.name().equals(counterName));
+  }
+
+  /**
+   * Runs the worker-side of a distributed scan: reads the folders of the shard from the input,
+   * scans them and writes the tiles found to the output.
+   *
+   * @param command Command of the worker
+   * @param in Input to read the folders of the shard from
+   * @param out Output to write the tiles to
+   * @return {@code true} if the shard was scanned completely
+   */
+  public static boolean serveShard(
+      final Transparency4Ortho command, final InputStream in, final OutputStream out) {
+    final var shard = new ArrayList<Path>();
+    try {
+      final var reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+      for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (!line.isBlank()) {
+          shard.add(command.getFileSystem().getPath(line));
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read the scenery-folders of the shard", e);
+    }
+    final var output =
+        new PrintStream(new BufferedOutputStream(out), false, StandardCharsets.UTF_8);
+    output.println(GREETING);
+    final var progressReporter = new ProgressReporter(command.getProgressTracker(), output);
+    final var reporter =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final var thread = new Thread(runnable, "shard-progress");
+              thread.setDaemon(true);
+              return thread;
+            });
+    reporter.scheduleAtFixedRate(
+        progressReporter,
+        PROGRESS_INTERVAL_MILLIS,
+        PROGRESS_INTERVAL_MILLIS,
+        TimeUnit.MILLISECONDS);
+    final boolean complete;
+    try (final var events = EventStream.ndjson(new EventLineWriter(output))) {
+      complete =
+          new TilesScanner(command, events)
+              .scanShard(
+                  shard,
+                  (orthoFolder, dsfFile, tile) -> {
+                    synchronized (output) {
+                      output.println(
+                          String.join(
+                              "\t",
+                              TILE,
+                              tile.toString(),
+                              orthoFolder.toAbsolutePath().toString(),
+                              dsfFile.toAbsolutePath().toString()));
+                    }
+                  });
+    } finally {
+      reporter.shutdownNow();
+    }
+    progressReporter.run();
+    synchronized (output) {
+      output.println(String.join("\t", DONE, complete ? COMPLETE : PARTIAL));
+      output.flush();
+    }
+    return complete;
+  }
+
+  /** Writes the counters of the worker that changed since they were last written */
+  private static final class ProgressReporter implements Runnable {
+
+    private final ProgressTracker progress;
+    private final PrintStream output;
+    private final Map<ProgressTracker.Counter, Long> reported =
+        new EnumMap<>(ProgressTracker.Counter.class);
+
+    private ProgressReporter(final ProgressTracker progress, final PrintStream output) {
+      this.progress = progress;
+      this.output = output;
+    }
+
+    @Override
+    public void run() {
+      synchronized (output) {
+        for (final var counter : REPORTED_COUNTERS) {
+          final var total = progress.get(counter);
+          final var previous = reported.put(counter, total);
+          if (previous == null || previous != total) {
+            output.println(String.join("\t", PROGRESS, counter.name(), Long.toString(total)));
+          }
+        }
+        output.flush();
+      }
+    }
+  }
+
+  /** Writes each line written to it (an encoded event) as an {@code EVENT}-line of the protocol */
+  private static final class EventLineWriter extends Writer {
+
+    private final PrintStream output;
+    private final StringBuilder line = new StringBuilder();
+
+    private EventLineWriter(final PrintStream output) {
+      this.output = output;
+    }
+
+    @Override
+    public void write(final char[] chars, final int offset, final int length) {
+      for (var idx = offset; idx < offset + length; idx++) {
+        if (chars[idx] == '\n') {
+          synchronized (output) {
+            output.println(EVENT + "\t" + line);
+          }
+          line.setLength(0);
+        } else {
+          line.append(chars[idx]);
+        }
+      }
+    }
+
+    @Override
+    public void flush() {
+      synchronized (output) {
+        output.flush();
+      }
+    }
+
+    @Override
+    public void close() {
+      flush();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package de.melb00m.tr4o.tiles;
+
+/**
+ * Detector that decides whether a scenery-pack is ortho-scenery or not.
+ *
+ * <p>A detector either gives its {@link #getVerdict() verdict} for a scenery-pack or abstains. A
+ * scenery-pack is ortho-scenery if no excluding detector and at least one including detector
+ * matches it. Within these two groups, the order the detectors are run in does not change the
+ * outcome, so the {@link OrthoDetectorChain} orders them by their cost and how often they decide,
+ * starting from the expectations declared here and moving towards the measured values.
+ *
+ * <p>Additional detectors can be added in {@code overlay-scanner.detection.custom-detectors},
+ * either by configuring one of the generic types or by naming an implementation of this interface
+ * with a public no-argument constructor.
+ */
+public interface OrthoDetector {
+
+  /** @return Unique name of the detector, as shown in logs and statistics */
+  String getName();
+
+  /** @return Verdict on a scenery-pack matched by this detector */
+  Verdict getVerdict();
+
+  /** @return Expected time (in microseconds) a single invocation takes */
+  double getExpectedCostMicros();
+
+  /** @return Expected share of scenery-packs ({@code 0} to {@code 1}) matched by this detector */
+  double getExpectedDecisionRate();
+
+  /**
+   * Decides on a scenery-pack. Detectors should take their signals from the listing of the pack,
+   * which is read only once for all detectors, and access the file-system themselves only if
+   * needed.
+   *
+   * @param sceneryPack Listing of the scenery-pack
+   * @return {@code true} if the detector gives its verdict on the scenery-pack, {@code false} if it
+   *     abstains
+   */
+  boolean matches(SceneryPackListing sceneryPack);
+
+  /** Verdict of a detector */
+  enum Verdict {
+    /** The scenery-pack is not ortho-scenery, no matter what other detectors find */
+    EXCLUDE,
+    /** The scenery-pack is ortho-scenery, unless it is excluded */
+    INCLUDE
+  }
+}
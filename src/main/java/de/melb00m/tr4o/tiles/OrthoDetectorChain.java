@@ -0,0 +1,231 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.exceptions.Exceptions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Classifies scenery-packs by running the {@link OrthoDetector}s, ordered so that cheap and
+ * decisive detectors run first.
+ *
+ * <p>The excluding detectors are run first, then the including ones; the first detector that
+ * matches decides. Within each group, the detectors are ordered by their cost per decision, i.e.
+ * their average cost divided by the share of scenery-packs they decide. Both values start out at
+ * the expectations declared by the detector (weighted as a number of invocations) and move towards
+ * the values measured on this installation, which are kept across runs in a statistics file.
+ */
+final class OrthoDetectorChain {
+
+  private static final Logger LOG = LogManager.getLogger(OrthoDetectorChain.class);
+  /** Rule reported if no detector matches, in which case the pack is not ortho-scenery */
+  static final String NO_INDICATION = "no-indication";
+  /** Measurements of previous runs are scaled down to this many invocations when loaded */
+  private static final long MAX_LOADED_INVOCATIONS = 1000;
+  private static final double MIN_DECISION_RATE = 0.001;
+
+  private final List<Statistics> excluding = new ArrayList<>();
+  private final List<Statistics> including = new ArrayList<>();
+  private final double priorWeight;
+  private long classifiedPacks;
+  private long directoryListings;
+  private long attributeReads;
+  private long lookups;
+
+  /**
+   * @param detectors Detectors to run
+   * @param priorWeight Number of invocations the declared expectations of a detector are weighted
+   *     as against its measurements
+   */
+  OrthoDetectorChain(final List<OrthoDetector> detectors, final double priorWeight) {
+    this.priorWeight = priorWeight;
+    for (final var detector : detectors) {
+      (detector.getVerdict() == OrthoDetector.Verdict.EXCLUDE ? excluding : including)
+          .add(new Statistics(detector));
+    }
+    reorder();
+  }
+
+  /**
+   * Classifies a scenery-pack.
+   *
+   * @param sceneryPack Listing of the scenery-pack
+   * @return Name of the detector that decided, or {@link #NO_INDICATION}
+   */
+  String classify(final SceneryPackListing sceneryPack) {
+    try {
+      for (final var group : List.of(excluding, including)) {
+        for (final var statistics : group) {
+          if (statistics.run(sceneryPack)) {
+            return statistics.detector.getName();
+          }
+        }
+      }
+      return NO_INDICATION;
+    } finally {
+      classifiedPacks++;
+      directoryListings += sceneryPack.getDirectoryListings();
+      attributeReads += sceneryPack.getAttributeReads();
+      lookups += sceneryPack.getLookups();
+      reorder();
+    }
+  }
+
+  /**
+   * @param rule Rule returned by {@link #classify(SceneryPackListing)}
+   * @return {@code true} if the rule classifies the scenery-pack as ortho-scenery
+   */
+  boolean isOrthoScenery(final String rule) {
+    return including.stream().anyMatch(statistics -> statistics.detector.getName().equals(rule));
+  }
+
+  private void reorder() {
+    final var byCostPerDecision = Comparator.comparingDouble(Statistics::costPerDecision);
+    excluding.sort(byCostPerDecision);
+    including.sort(byCostPerDecision);
+  }
+
+  /**
+   * Adds the measurements of previous runs from the given file, if it exists.
+   *
+   * @param file Statistics file
+   */
+  void loadStatistics(final Path file) {
+    if (!Files.isRegularFile(file)) {
+      return;
+    }
+    final var byName =
+        allStatistics()
+            .collect(Collectors.toMap(stats -> stats.detector.getName(), stats -> stats));
+    try {
+      for (final var line : Files.readAllLines(file)) {
+        final var fields = line.split("\t");
+        final var statistics = fields.length == 4 ? byName.get(fields[0]) : null;
+        if (statistics != null) {
+          final var invocations = Long.parseLong(fields[1]);
+          final var scale =
+              Math.min(1.0, (double) MAX_LOADED_INVOCATIONS / Math.max(1, invocations));
+          statistics.loadedInvocations = Math.round(invocations * scale);
+          statistics.loadedDecisions = Math.round(Long.parseLong(fields[2]) * scale);
+          statistics.loadedNanos = Math.round(Long.parseLong(fields[3]) * scale);
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      LOG.debug("Ortho-detector statistics at {} could not be read and are ignored", file, e);
+    }
+    reorder();
+  }
+
+  /**
+   * Writes the measurements of previous runs and this run to the given file, replacing the
+   * previous one atomically.
+   *
+   * @param file Statistics file
+   */
+  void saveStatistics(final Path file) {
+    final var lines =
+        allStatistics()
+            .map(
+                stats ->
+                    String.join(
+                        "\t",
+                        stats.detector.getName(),
+                        Long.toString(stats.loadedInvocations + stats.invocations),
+                        Long.toString(stats.loadedDecisions + stats.decisions),
+                        Long.toString(stats.loadedNanos + stats.nanos)))
+            .collect(Collectors.toList());
+    try {
+      Files.createDirectories(file.getParent());
+      // workers of a distributed scan save their statistics at the same time
+      final var tempFile =
+          Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      Files.write(tempFile, lines);
+      Files.move(
+          tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /**
+   * @return Statistics of this run: the file-system calls of all detectors, followed by one line
+   *     per detector in the order they are run
+   */
+  List<String> report() {
+    final var calls =
+        String.format(
+            "%d scenery-packs classified with %d directory-listings and %d attribute-reads, "
+                + "for %d lookups of the detectors",
+            classifiedPacks,
+            directoryListings,
+            attributeReads,
+            lookups);
+    final var detectors =
+        allStatistics()
+            .map(
+                stats ->
+                    String.format(
+                        "%-20s %-7s %6d runs, decided %6d (%3.0f%%), avg %8.1f us, score %10.1f",
+                        stats.detector.getName(),
+                        stats.detector.getVerdict(),
+                        stats.invocations,
+                        stats.decisions,
+                        stats.invocations > 0 ? 100.0 * stats.decisions / stats.invocations : 0.0,
+                        stats.invocations > 0 ? stats.nanos / 1000.0 / stats.invocations : 0.0,
+                        stats.costPerDecision()));
+    return Stream.concat(Stream.of(calls), detectors).collect(Collectors.toList());
+  }
+
+  private Stream<Statistics> allStatistics() {
+    return Stream.concat(excluding.stream(), including.stream());
+  }
+
+  /** Measurements of a single detector */
+  private final class Statistics {
+
+    private final OrthoDetector detector;
+    private long invocations;
+    private long decisions;
+    private long nanos;
+    private long loadedInvocations;
+    private long loadedDecisions;
+    private long loadedNanos;
+
+    private Statistics(final OrthoDetector detector) {
+      this.detector = detector;
+    }
+
+    private boolean run(final SceneryPackListing sceneryPack) {
+      final var start = System.nanoTime();
+      final var matches = detector.matches(sceneryPack);
+      nanos += System.nanoTime() - start;
+      invocations++;
+      if (matches) {
+        decisions++;
+      }
+      LOG.trace(
+          "Ortho-detector {} on {}: {}", detector.getName(), sceneryPack.getFolder(), matches);
+      return matches;
+    }
+
+    private double costPerDecision() {
+      final var weight = priorWeight + loadedInvocations + invocations;
+      final var costMicros =
+          (detector.getExpectedCostMicros() * priorWeight + (loadedNanos + nanos) / 1000.0)
+              / weight;
+      final var decisionRate =
+          (detector.getExpectedDecisionRate() * priorWeight + loadedDecisions + decisions)
+              / weight;
+      return costMicros / Math.max(decisionRate, MIN_DECISION_RATE);
+    }
+  }
+}
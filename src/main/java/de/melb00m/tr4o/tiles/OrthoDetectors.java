@@ -0,0 +1,230 @@
+package de.melb00m.tr4o.tiles;
+
+import com.typesafe.config.Config;
+import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.misc.Verify;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the built-in {@link OrthoDetector}s and the ones configured in {@code
+ * overlay-scanner.detection.custom-detectors}.
+ */
+final class OrthoDetectors {
+
+  private static final String TYPE_FILES = "files";
+  private static final String TYPE_FOLDER_NAME = "folder-name";
+  private static final double DEFAULT_COST_MICROS = 20;
+  private static final double DEFAULT_DECISION_RATE = 0.1;
+  private static final String TEXTURES = "textures";
+
+  private OrthoDetectors() {}
+
+  /**
+   * Creates all detectors.
+   *
+   * @param config The {@code overlay-scanner}-configuration
+   * @return Built-in detectors, followed by the custom ones
+   */
+  static List<OrthoDetector> create(final Config config) {
+    final var detectors = new ArrayList<OrthoDetector>();
+    final var earthNavData = config.getString("earth-nav-data-folder");
+    final var orthos = config.getConfig("detection.orthos");
+    // basic check: needs to contain Earth nav data
+    detectors.add(
+        new SimpleDetector(
+            "no-earth-nav-data",
+            OrthoDetector.Verdict.EXCLUDE,
+            10,
+            0.5,
+            pack -> !pack.isDirectory(earthNavData)));
+    // may not contain any file that signals it is _not_ an ortho-scenery dir
+    detectors.add(
+        filesDetector(
+            "excluder-file",
+            OrthoDetector.Verdict.EXCLUDE,
+            30,
+            0.2,
+            orthos.getStringList("excluder-files")));
+    // well-known folder names that match ortho-scenery
+    detectors.add(
+        folderNameDetector(
+            "folder-name",
+            OrthoDetector.Verdict.INCLUDE,
+            1,
+            0.3,
+            orthos.getStringList("folder-names-regex")));
+    // contained files that indicate ortho-scenery
+    detectors.add(
+        filesDetector(
+            "includer-file",
+            OrthoDetector.Verdict.INCLUDE,
+            20,
+            0.1,
+            orthos.getStringList("includer-files")));
+    // a little more expensive, as we check for DDS tile-textures with matching ortho-style naming
+    final var texturePattern =
+        Pattern.compile(orthos.getString("dds-filename-regex"), Pattern.CASE_INSENSITIVE);
+    detectors.add(
+        new SimpleDetector(
+            "ortho-textures",
+            OrthoDetector.Verdict.INCLUDE,
+            5000,
+            0.05,
+            pack ->
+                pack.isDirectory(TEXTURES)
+                    && folderContainsOnlyOrthoDdsTextures(pack, texturePattern)));
+
+    for (final var custom : config.getConfigList("detection.custom-detectors")) {
+      detectors.add(createCustom(custom));
+    }
+    final var names = new HashSet<String>();
+    detectors.forEach(
+        detector ->
+            Verify.withErrorMessage("Ortho-detector name is not unique: %s", detector.getName())
+                .argument(names.add(detector.getName())));
+    return detectors;
+  }
+
+  private static OrthoDetector createCustom(final Config config) {
+    if (config.hasPath("class")) {
+      final var className = config.getString("class");
+      try {
+        return Class.forName(className)
+            .asSubclass(OrthoDetector.class)
+            .getConstructor()
+            .newInstance();
+      } catch (ClassNotFoundException
+          | ClassCastException
+          | NoSuchMethodException
+          | InstantiationException
+          | IllegalAccessException e) {
+        throw new IllegalArgumentException(
+            String.format("Ortho-detector class cannot be used: %s", className), e);
+      } catch (InvocationTargetException e) {
+        throw Exceptions.unrecoverable(e.getCause());
+      }
+    }
+    final var name = config.getString("name");
+    final var type = config.getString("type");
+    final var verdict = config.getEnum(OrthoDetector.Verdict.class, "verdict");
+    final var cost =
+        config.hasPath("expected-cost-micros")
+            ? config.getDouble("expected-cost-micros")
+            : DEFAULT_COST_MICROS;
+    final var rate =
+        config.hasPath("expected-decision-rate")
+            ? config.getDouble("expected-decision-rate")
+            : DEFAULT_DECISION_RATE;
+    switch (type) {
+      case TYPE_FILES:
+        return filesDetector(name, verdict, cost, rate, config.getStringList("files"));
+      case TYPE_FOLDER_NAME:
+        return folderNameDetector(name, verdict, cost, rate, config.getStringList("regex"));
+      default:
+        throw new IllegalArgumentException(
+            String.format("Unknown type '%s' of ortho-detector %s", type, name));
+    }
+  }
+
+  private static OrthoDetector filesDetector(
+      final String name,
+      final OrthoDetector.Verdict verdict,
+      final double cost,
+      final double rate,
+      final List<String> files) {
+    final var lookup = List.copyOf(files);
+    return new SimpleDetector(
+        name, verdict, cost, rate, pack -> lookup.stream().anyMatch(pack::exists));
+  }
+
+  private static OrthoDetector folderNameDetector(
+      final String name,
+      final OrthoDetector.Verdict verdict,
+      final double cost,
+      final double rate,
+      final List<String> regexes) {
+    final Set<Pattern> patterns =
+        regexes.stream().map(Pattern::compile).collect(Collectors.toUnmodifiableSet());
+    return new SimpleDetector(
+        name,
+        verdict,
+        cost,
+        rate,
+        pack ->
+            patterns.stream()
+                .anyMatch(
+                    pattern -> pattern.matcher(pack.getFolder().getFileName().toString()).matches()));
+  }
+
+  private static boolean folderContainsOnlyOrthoDdsTextures(
+      final SceneryPackListing pack, final Pattern texturePattern) {
+    final Set<Path> ddsTextures = new HashSet<>();
+    pack.walk(
+        TEXTURES,
+        file -> {
+          if (file.getFileName().toString().toLowerCase().endsWith(".dds")) {
+            ddsTextures.add(file);
+          }
+        });
+    return !ddsTextures.isEmpty()
+        && ddsTextures.stream()
+            .allMatch(dds -> texturePattern.matcher(dds.getFileName().toString()).matches());
+  }
+
+  /** Detector that matches the scenery-packs fulfilling a predicate */
+  private static final class SimpleDetector implements OrthoDetector {
+
+    private final String name;
+    private final Verdict verdict;
+    private final double expectedCostMicros;
+    private final double expectedDecisionRate;
+    private final Predicate<SceneryPackListing> predicate;
+
+    private SimpleDetector(
+        final String name,
+        final Verdict verdict,
+        final double expectedCostMicros,
+        final double expectedDecisionRate,
+        final Predicate<SceneryPackListing> predicate) {
+      this.name = name;
+      this.verdict = verdict;
+      this.expectedCostMicros = expectedCostMicros;
+      this.expectedDecisionRate = expectedDecisionRate;
+      this.predicate = predicate;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public Verdict getVerdict() {
+      return verdict;
+    }
+
+    @Override
+    public double getExpectedCostMicros() {
+      return expectedCostMicros;
+    }
+
+    @Override
+    public double getExpectedDecisionRate() {
+      return expectedDecisionRate;
+    }
+
+    @Override
+    public boolean matches(final SceneryPackListing sceneryPack) {
+      return predicate.test(sceneryPack);
+    }
+  }
+}
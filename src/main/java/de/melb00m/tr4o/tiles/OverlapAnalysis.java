@@ -0,0 +1,251 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.helper.FileHelper;
+import de.melb00m.tr4o.helper.LinkFollowingWalker;
+import de.melb00m.tr4o.progress.ProgressTracker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds ortho-DSFs that X-Plane loads without ever showing them.
+ *
+ * <p>If several ortho-sceneries provide the same tile, X-Plane only shows the one that comes first
+ * in the {@code scenery_packs.ini}, but still loads the others. For every tile provided more than
+ * once, the analysis determines the visible pack and the shadowed ones, and adds up the disk-space
+ * of the shadowed DSF-files and of their textures.
+ *
+ * <p>Textures named the way Ortho4XP names them ({@code <y>_<x>_<provider><zoomlevel>.dds}) are
+ * attributed to the tile their center lies in. Textures named otherwise are attributed to the
+ * tiles of their pack in equal shares.
+ */
+public final class OverlapAnalysis {
+
+  private static final Logger LOG = LogManager.getLogger(OverlapAnalysis.class);
+  private static final Pattern TEXTURE_FILENAME_PATTERN =
+      Pattern.compile(
+          Transparency4Ortho.CONFIG.getString("overlay-scanner.overlaps.texture-filename-regex"),
+          Pattern.CASE_INSENSITIVE);
+  /** Ortho4XP-textures span 16x16 map-tiles of their zoomlevel */
+  private static final int TEXTURE_MAP_TILES = 16;
+
+  private final Map<Tile, List<Path>> overlappingTiles;
+  private final List<ShadowedPack> shadowedPacks;
+
+  private OverlapAnalysis(
+      final Map<Tile, List<Path>> overlappingTiles, final List<ShadowedPack> shadowedPacks) {
+    this.overlappingTiles = overlappingTiles;
+    this.shadowedPacks = shadowedPacks;
+  }
+
+  /**
+   * Analyzes the overlaps in a scan-result.
+   *
+   * @param result Result of an ortho-scan
+   * @param packOrder Scenery-folders from the highest to the lowest priority
+   * @param progress Tracker the file-operations are reported to
+   * @return Analysis of the overlaps
+   */
+  public static OverlapAnalysis analyze(
+      final TilesScannerResult result, final List<Path> packOrder, final ProgressTracker progress) {
+    final var priorities = new HashMap<Path, Integer>();
+    for (var idx = 0; idx < packOrder.size(); idx++) {
+      priorities.putIfAbsent(packOrder.get(idx).toAbsolutePath(), idx);
+    }
+    final Comparator<Path> byPriority =
+        Comparator.comparing(
+                (Path pack) -> priorities.getOrDefault(pack.toAbsolutePath(), Integer.MAX_VALUE))
+            .thenComparing(Comparator.naturalOrder());
+
+    // DSF-files per tile and pack
+    final var dsfFiles = new TreeMap<Tile, Map<Path, Path>>();
+    result
+        .getOrthoFolderToDsfMap()
+        .entries()
+        .forEach(
+            entry ->
+                dsfFiles
+                    .computeIfAbsent(tileOf(entry.getValue()), tile -> new TreeMap<>(byPriority))
+                    .put(entry.getKey(), entry.getValue()));
+
+    final var overlappingTiles = new TreeMap<Tile, List<Path>>();
+    final var shadowedTiles = new HashMap<Path, Map<Tile, Path>>();
+    dsfFiles.forEach(
+        (tile, packs) -> {
+          if (packs.size() < 2) {
+            return;
+          }
+          final var ordered = List.copyOf(packs.keySet());
+          overlappingTiles.put(tile, ordered);
+          ordered.subList(1, ordered.size())
+              .forEach(
+                  pack ->
+                      shadowedTiles
+                          .computeIfAbsent(pack, key -> new TreeMap<>())
+                          .put(tile, packs.get(pack)));
+        });
+
+    final var shadowedPacks = new ArrayList<ShadowedPack>();
+    shadowedTiles.forEach(
+        (pack, tiles) -> {
+          final var totalTiles = result.getOrthoFolderToDsfMap().get(pack).size();
+          final var dsfBytes = tiles.values().stream().mapToLong(FileHelper::size).sum();
+          final var shadowingPacks = new TreeSet<Path>(byPriority);
+          tiles.keySet().forEach(tile -> shadowingPacks.add(overlappingTiles.get(tile).get(0)));
+          shadowedPacks.add(
+              new ShadowedPack(
+                  pack,
+                  tiles.keySet(),
+                  totalTiles,
+                  dsfBytes,
+                  shadowedTextureBytes(pack, tiles.keySet(), totalTiles, progress),
+                  shadowingPacks));
+        });
+    shadowedPacks.sort(Comparator.comparing(ShadowedPack::getPack, byPriority));
+    return new OverlapAnalysis(
+        Collections.unmodifiableMap(overlappingTiles), List.copyOf(shadowedPacks));
+  }
+
+  private static Tile tileOf(final Path dsfFile) {
+    return new Tile(FileHelper.removeFileExtension(dsfFile.getFileName().toString()));
+  }
+
+  private static long shadowedTextureBytes(
+      final Path pack,
+      final Set<Tile> shadowedTiles,
+      final int totalTiles,
+      final ProgressTracker progress) {
+    final var texturesFolder = pack.resolve("textures");
+    if (!Files.isDirectory(texturesFolder)) {
+      return 0;
+    }
+    final var attributed = new long[1];
+    final var unattributed = new long[1];
+    new LinkFollowingWalker()
+        .walk(
+            texturesFolder,
+            dir -> true,
+            file -> {
+              progress.fileOperations(1);
+              final var name = file.getFileName().toString();
+              if (!Files.isRegularFile(file) || !name.toLowerCase().endsWith(".dds")) {
+                return;
+              }
+              final var matcher = TEXTURE_FILENAME_PATTERN.matcher(name);
+              final var tile = matcher.matches() ? tileOfTexture(matcher) : Optional.<Tile>empty();
+              if (tile.isEmpty()) {
+                unattributed[0] += FileHelper.size(file);
+              } else if (shadowedTiles.contains(tile.get())) {
+                attributed[0] += FileHelper.size(file);
+              }
+            });
+    LOG.trace(
+        "Textures of {}: {} bytes attributed to shadowed tiles, {} bytes unattributed",
+        pack,
+        attributed[0],
+        unattributed[0]);
+    return attributed[0] + unattributed[0] * shadowedTiles.size() / Math.max(1, totalTiles);
+  }
+
+  /**
+   * Determines the tile an Ortho4XP-texture belongs to, by the center of the map-tiles it spans.
+   *
+   * @param matcher Matched texture-name with the groups {@code y}, {@code x} and {@code zl}
+   * @return Tile containing the center of the texture, or empty if the name is not a valid position
+   */
+  private static Optional<Tile> tileOfTexture(final Matcher matcher) {
+    final var zoomLevel = Integer.parseInt(matcher.group("zl"));
+    final var mapTiles = Math.pow(2, zoomLevel);
+    final var x = Long.parseLong(matcher.group("x")) + TEXTURE_MAP_TILES / 2.0;
+    final var y = Long.parseLong(matcher.group("y")) + TEXTURE_MAP_TILES / 2.0;
+    if (zoomLevel > 24 || x >= mapTiles || y >= mapTiles) {
+      return Optional.empty();
+    }
+    final var longitude = x / mapTiles * 360 - 180;
+    final var latitude = Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / mapTiles))));
+    return Optional.of(new Tile((int) Math.floor(latitude), (int) Math.floor(longitude)));
+  }
+
+  /** @return Tiles provided by more than one pack, with the packs from the highest priority down */
+  public Map<Tile, List<Path>> getOverlappingTiles() {
+    return overlappingTiles;
+  }
+
+  /** @return Packs that provide at least one shadowed tile, from the highest priority down */
+  public List<ShadowedPack> getShadowedPacks() {
+    return shadowedPacks;
+  }
+
+  /** A scenery-pack providing tiles that are hidden by packs of a higher priority */
+  public static final class ShadowedPack {
+
+    private final Path pack;
+    private final Set<Tile> shadowedTiles;
+    private final int totalTiles;
+    private final long dsfBytes;
+    private final long textureBytes;
+    private final Set<Path> shadowingPacks;
+
+    private ShadowedPack(
+        final Path pack,
+        final Set<Tile> shadowedTiles,
+        final int totalTiles,
+        final long dsfBytes,
+        final long textureBytes,
+        final Set<Path> shadowingPacks) {
+      this.pack = pack;
+      this.shadowedTiles = Collections.unmodifiableSet(shadowedTiles);
+      this.totalTiles = totalTiles;
+      this.dsfBytes = dsfBytes;
+      this.textureBytes = textureBytes;
+      this.shadowingPacks = Collections.unmodifiableSet(shadowingPacks);
+    }
+
+    public Path getPack() {
+      return pack;
+    }
+
+    public Set<Tile> getShadowedTiles() {
+      return shadowedTiles;
+    }
+
+    public int getTotalTiles() {
+      return totalTiles;
+    }
+
+    /** @return Size of the shadowed DSF-files */
+    public long getDsfBytes() {
+      return dsfBytes;
+    }
+
+    /** @return Size of the textures of the shadowed tiles */
+    public long getTextureBytes() {
+      return textureBytes;
+    }
+
+    /** @return Packs of a higher priority that hide the shadowed tiles */
+    public Set<Path> getShadowingPacks() {
+      return shadowingPacks;
+    }
+
+    /** @return {@code true} if none of the pack's tiles is visible, so it can be disabled */
+    public boolean isFullyShadowed() {
+      return shadowedTiles.size() == totalTiles;
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.progress.ProgressTracker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Manifest written into an ortho-scenery once it has been scanned, so that later scans - also on
+ * other machines sharing the same scenery - can take its verdict and DSF-files from the manifest
+ * instead of running the detection and enumerating its {@code Earth nav data} again.
+ *
+ * <p>The manifest is a simple text-file. Its first line holds a fingerprint of the pack:
+ * the names of the entries in the pack's root (except for the manifest itself), and the names and
+ * modification times of the entries in its {@code Earth nav data}. Adding or removing a DSF-file
+ * changes the modification time of the folder holding it, and adding a marker-file (like {@code
+ * Transparency4Ortho.Exclude}) changes the entries of the root, so the fingerprint no longer
+ * matches and the pack is scanned in full again. The settings of the detection (including the
+ * custom detectors) are part of the fingerprint as well, so a pack is classified again once they
+ * change. Taking the fingerprint costs two directory-listings and one attribute-read per 10x10
+ * degree folder of the pack.
+ *
+ * <p>DSF-files are recorded relative to the pack, with {@code /} as separator, so a manifest stays
+ * valid if the share is mounted at different locations or on a different operating system. A
+ * manifest listing files outside of its pack is ignored.
+ */
+final class PackManifest {
+
+  private static final Logger LOG = LogManager.getLogger(PackManifest.class);
+  private static final String FILE_NAME =
+      Transparency4Ortho.CONFIG.getString("overlay-scanner.pack-manifests.file-name");
+  private static final String EARTH_NAV_DATA =
+      Transparency4Ortho.CONFIG.getString("overlay-scanner.earth-nav-data-folder");
+  private static final String FINGERPRINT_PREFIX = "#pack=";
+  private static final String RULE_PREFIX = "#rule=";
+
+  private final Path pack;
+  private final String fingerprint;
+  private final String rule;
+  private final List<Path> dsfFiles;
+
+  private PackManifest(
+      final Path pack, final String fingerprint, final String rule, final List<Path> dsfFiles) {
+    this.pack = pack;
+    this.fingerprint = fingerprint;
+    this.rule = rule;
+    this.dsfFiles = dsfFiles;
+  }
+
+  /**
+   * Captures the fingerprint of a pack before it is scanned.
+   *
+   * @param pack Ortho-scenery
+   * @param rule Rule that classified the pack as ortho-scenery
+   * @param detectionSettings Settings of the detection that classified the pack
+   * @param progress Tracker the file-operations are reported to
+   * @return Manifest without DSF-files
+   */
+  static PackManifest capture(
+      final Path pack,
+      final String rule,
+      final String detectionSettings,
+      final ProgressTracker progress) {
+    return new PackManifest(
+        pack, fingerprintOf(pack, detectionSettings, progress), rule, List.of());
+  }
+
+  /**
+   * Loads the manifest of a pack, if it has one that still matches the pack.
+   *
+   * @param pack Scenery-pack
+   * @param detectionSettings Settings of the current detection
+   * @param progress Tracker the file-operations are reported to
+   * @return Valid manifest, or empty if the pack has none or it is outdated
+   */
+  static Optional<PackManifest> load(
+      final Path pack, final String detectionSettings, final ProgressTracker progress) {
+    final var file = pack.resolve(FILE_NAME);
+    progress.fileOperations(1);
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    try {
+      final var lines = Files.readAllLines(file);
+      if (lines.size() < 2
+          || !lines.get(0).startsWith(FINGERPRINT_PREFIX)
+          || !lines.get(1).startsWith(RULE_PREFIX)) {
+        LOG.debug("Ignoring malformed manifest {}", file);
+        return Optional.empty();
+      }
+      final var fingerprint = lines.get(0).substring(FINGERPRINT_PREFIX.length());
+      if (!fingerprint.equals(fingerprintOf(pack, detectionSettings, progress))) {
+        LOG.debug("{} or the detection has changed since its manifest was written", pack);
+        return Optional.empty();
+      }
+      final var root = pack.normalize();
+      final var dsfFiles =
+          lines.subList(2, lines.size()).stream()
+              .filter(line -> !line.isBlank())
+              .map(pack::resolve)
+              .collect(Collectors.toUnmodifiableList());
+      if (dsfFiles.stream().anyMatch(dsf -> !dsf.normalize().startsWith(root))) {
+        LOG.warn("Ignoring manifest {}, as it lists files outside of the pack", file);
+        return Optional.empty();
+      }
+      return Optional.of(
+          new PackManifest(
+              pack, fingerprint, lines.get(1).substring(RULE_PREFIX.length()), dsfFiles));
+    } catch (IOException e) {
+      LOG.debug("Failed to read manifest {}", file, e);
+      return Optional.empty();
+    }
+  }
+
+  private static String fingerprintOf(
+      final Path pack, final String detectionSettings, final ProgressTracker progress) {
+    final var parts = new ArrayList<String>();
+    parts.add("detection:" + detectionSettings);
+    progress.fileOperations(2);
+    try (final var stream = Files.list(pack)) {
+      stream
+          .map(entry -> entry.getFileName().toString())
+          .filter(name -> !name.startsWith(FILE_NAME))
+          .forEach(name -> parts.add("root:" + name));
+    } catch (IOException e) {
+      LOG.debug("Failed to list {}", pack, e);
+      parts.add("root:-");
+    }
+    final var earthNavData = pack.resolve(EARTH_NAV_DATA);
+    try (final var stream = Files.list(earthNavData)) {
+      stream.forEach(
+          entry -> {
+            progress.fileOperations(1);
+            parts.add(String.format("end:%s:%d", entry.getFileName(), modifiedOf(entry)));
+          });
+    } catch (IOException e) {
+      LOG.debug("Failed to list {}", earthNavData, e);
+      parts.add("end:-");
+    }
+    return ScanCheckpoint.fingerprint(parts);
+  }
+
+  private static long modifiedOf(final Path path) {
+    try {
+      return Files.getLastModifiedTime(path).toMillis();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * @param dsfFiles DSF-files found in the pack
+   * @return Manifest of the pack with the given DSF-files
+   */
+  PackManifest withDsfFiles(final Collection<Path> dsfFiles) {
+    return new PackManifest(pack, fingerprint, rule, List.copyOf(dsfFiles));
+  }
+
+  /**
+   * Writes the manifest into the pack. Packs that cannot be written to (e.g. on a read-only share)
+   * are scanned in full, as if they had no manifest.
+   */
+  void save() {
+    final var file = pack.resolve(FILE_NAME);
+    final var lines = new ArrayList<String>(dsfFiles.size() + 2);
+    lines.add(FINGERPRINT_PREFIX + fingerprint);
+    lines.add(RULE_PREFIX + rule);
+    dsfFiles.forEach(dsf -> lines.add(pack.relativize(dsf).toString().replace('\\', '/')));
+    final var tempFile = file.resolveSibling(FILE_NAME + ".tmp");
+    try {
+      Files.write(tempFile, lines);
+      Files.move(
+          tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      LOG.trace("Wrote manifest {}", file);
+    } catch (IOException e) {
+      LOG.debug("Failed to write manifest {}", file, e);
+    }
+  }
+
+  /** @return Rule that originally classified the pack as ortho-scenery */
+  String getRule() {
+    return rule;
+  }
+
+  /** @return DSF-files of the pack */
+  List<Path> getDsfFiles() {
+    return dsfFiles;
+  }
+}
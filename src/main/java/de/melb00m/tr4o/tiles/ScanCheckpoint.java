@@ -0,0 +1,217 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.helper.OutputHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Records the progress of a scan, so that a scan that was interrupted (or ran out of its time
+ * budget) can be continued later on instead of starting over.
+ *
+ * <p>The checkpoint is a tab-separated text-file that is appended to whenever a scenery-pack has
+ * been handled completely: one record per scanned folder with the ortho-sceneries detected in it,
+ * and one record per ortho-scenery with its DSF-files. Every record is written on its own and ends
+ * with an end-marker, so a record that was cut off by the interruption is simply ignored. The first
+ * line holds a fingerprint of the scanned folders; if they differ, the checkpoint is not used.
+ */
+public final class ScanCheckpoint {
+
+  private static final Logger LOG = LogManager.getLogger(ScanCheckpoint.class);
+  private static final String FINGERPRINT_PREFIX = "#scan=";
+  private static final String CLASSIFIED_FOLDER = "S";
+  private static final String COMPLETED_PACK = "P";
+  private static final String END_MARKER = ".";
+
+  private final Path file;
+  private final Map<Path, List<Path>> classifiedFolders;
+  private final Map<Path, List<Path>> completedPacks;
+
+  private ScanCheckpoint(
+      final Path file,
+      final Map<Path, List<Path>> classifiedFolders,
+      final Map<Path, List<Path>> completedPacks) {
+    this.file = file;
+    this.classifiedFolders = classifiedFolders;
+    this.completedPacks = completedPacks;
+  }
+
+  /** @return Checkpoint that neither records nor provides any progress */
+  public static ScanCheckpoint none() {
+    return new ScanCheckpoint(null, Map.of(), Map.of());
+  }
+
+  /**
+   * Opens the checkpoint at the given file.
+   *
+   * @param file Checkpoint file
+   * @param fingerprint Fingerprint of the folders that are scanned
+   * @param resume If {@code true}, the progress recorded in the file is continued (if it was
+   *     recorded for the same fingerprint), otherwise a new checkpoint is started
+   * @return Opened checkpoint
+   */
+  public static ScanCheckpoint open(final Path file, final String fingerprint, final boolean resume) {
+    final var classifiedFolders = new HashMap<Path, List<Path>>();
+    final var completedPacks = new HashMap<Path, List<Path>>();
+    if (resume) {
+      if (load(file, fingerprint, classifiedFolders, completedPacks)) {
+        LOG.info(
+            "Resuming the previous scan: {} folders and {} ortho-sceneries are taken from {}",
+            classifiedFolders.size(),
+            completedPacks.size(),
+            file);
+        return new ScanCheckpoint(file, classifiedFolders, completedPacks);
+      }
+      LOG.info("No checkpoint of a previous scan found that could be resumed, starting a new scan");
+    }
+    try {
+      Files.createDirectories(file.getParent());
+      Files.write(file, List.of(FINGERPRINT_PREFIX + fingerprint));
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+    return new ScanCheckpoint(file, classifiedFolders, completedPacks);
+  }
+
+  private static boolean load(
+      final Path file,
+      final String fingerprint,
+      final Map<Path, List<Path>> classifiedFolders,
+      final Map<Path, List<Path>> completedPacks) {
+    if (!Files.isRegularFile(file)) {
+      return false;
+    }
+    try {
+      final var lines = Files.readAllLines(file);
+      if (lines.isEmpty() || !lines.get(0).equals(FINGERPRINT_PREFIX + fingerprint)) {
+        LOG.info("The scanned folders have changed since the checkpoint at {} was written", file);
+        return false;
+      }
+      for (final var line : lines.subList(1, lines.size())) {
+        final var fields = line.split("\t", -1);
+        if (fields.length < 3 || !END_MARKER.equals(fields[fields.length - 1])) {
+          LOG.debug("Ignoring incomplete checkpoint record '{}'", line);
+          continue;
+        }
+        final var folder = file.getFileSystem().getPath(fields[1]);
+        final var paths =
+            Arrays.stream(fields, 2, fields.length - 1)
+                .map(path -> folder.resolve(path))
+                .collect(Collectors.toUnmodifiableList());
+        if (CLASSIFIED_FOLDER.equals(fields[0])) {
+          classifiedFolders.put(folder, paths);
+        } else if (COMPLETED_PACK.equals(fields[0])) {
+          completedPacks.put(folder, paths);
+        }
+      }
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Checkpoint at {} could not be read and will be ignored", file);
+      LOG.debug("Failed to read checkpoint", e);
+      return false;
+    }
+  }
+
+  /**
+   * Creates the fingerprint of the scanned folders.
+   *
+   * @param parts Everything the scan depends on, e.g. the scenery-packs and the scanned folders
+   * @return Fingerprint
+   */
+  public static String fingerprint(final Collection<String> parts) {
+    try {
+      final var digest = MessageDigest.getInstance("MD5");
+      parts.stream()
+          .sorted()
+          .forEach(part -> digest.update((part + "\n").getBytes(StandardCharsets.UTF_8)));
+      return OutputHelper.bytesToHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /**
+   * @param folder Scanned folder
+   * @return Ortho-sceneries that were detected in the folder, or empty if it was not scanned yet
+   */
+  Optional<List<Path>> getClassification(final Path folder) {
+    return Optional.ofNullable(classifiedFolders.get(folder.toAbsolutePath()));
+  }
+
+  /**
+   * @param orthoFolder Ortho-scenery
+   * @return DSF-files of the ortho-scenery, or empty if it was not scanned yet
+   */
+  Optional<List<Path>> getCompletedPack(final Path orthoFolder) {
+    return Optional.ofNullable(completedPacks.get(orthoFolder.toAbsolutePath()));
+  }
+
+  /**
+   * Records that a folder has been scanned for ortho-sceneries.
+   *
+   * @param folder Scanned folder
+   * @param orthoFolders Ortho-sceneries that were detected in it
+   */
+  void recordClassification(final Path folder, final Collection<Path> orthoFolders) {
+    append(CLASSIFIED_FOLDER, folder, orthoFolders);
+  }
+
+  /**
+   * Records that the DSF-files of an ortho-scenery have been scanned.
+   *
+   * @param orthoFolder Ortho-scenery
+   * @param dsfFiles DSF-files of the ortho-scenery
+   */
+  void recordCompletedPack(final Path orthoFolder, final Collection<Path> dsfFiles) {
+    append(COMPLETED_PACK, orthoFolder, dsfFiles);
+  }
+
+  private void append(final String type, final Path folder, final Collection<Path> paths) {
+    if (file == null) {
+      return;
+    }
+    final var absoluteFolder = folder.toAbsolutePath();
+    final var fields = new ArrayList<String>(paths.size() + 3);
+    fields.add(type);
+    fields.add(absoluteFolder.toString());
+    paths.forEach(path -> fields.add(absoluteFolder.relativize(path.toAbsolutePath()).toString()));
+    fields.add(END_MARKER);
+    try {
+      Files.write(
+          file,
+          List.of(String.join("\t", fields)),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /** Removes the checkpoint, once the scan has completed. */
+  void delete() {
+    if (file == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+}
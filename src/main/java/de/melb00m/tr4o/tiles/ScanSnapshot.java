@@ -0,0 +1,183 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.helper.OutputHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Snapshot of everything a scan and the following library generation depended on, which allows
+ * to tell whether the {@code library.txt} is still up to date without scanning again.
+ *
+ * <p>Small files (the {@code scenery_packs.ini} and the {@code library.txt}) are recorded by their
+ * content-hash. Folders are recorded by their modification time, which changes whenever an entry
+ * is added to or removed from them: for every scanned scenery-pack this is the pack itself, its
+ * {@code Earth nav data} and {@code textures}, and for ortho-sceneries also the sub-folders of
+ * their {@code Earth nav data} holding the DSF-files.
+ */
+public final class ScanSnapshot {
+
+  private static final Logger LOG = LogManager.getLogger(ScanSnapshot.class);
+  private static final String EARTH_NAV_DATA =
+      Transparency4Ortho.CONFIG.getString("overlay-scanner.earth-nav-data-folder");
+  private static final String TEXTURES = "textures";
+  private static final String FILE_ENTRY = "F";
+  private static final String FOLDER_ENTRY = "D";
+  private static final String MISSING = "-";
+
+  /** Recorded state per file or folder, keyed by {@code <type>\t<path>} */
+  private final Map<String, String> entries;
+
+  private ScanSnapshot(final Map<String, String> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * Captures the current state of the given files and folders.
+   *
+   * @param files Files to record by content, e.g. the {@code scenery_packs.ini} and {@code
+   *     library.txt}
+   * @param scannedFolders Scenery-packs that have been scanned
+   * @param orthoFolders Scenery-packs that have been detected as ortho-scenery
+   * @return Snapshot of the current state
+   */
+  public static ScanSnapshot capture(
+      final Collection<Path> files,
+      final Collection<Path> scannedFolders,
+      final Set<Path> orthoFolders) {
+    final var entries = new LinkedHashMap<String, String>();
+    for (final var file : files) {
+      entries.put(key(FILE_ENTRY, file), hashOf(file));
+    }
+    for (final var folder : scannedFolders) {
+      final var earthNavData = folder.resolve(EARTH_NAV_DATA);
+      for (final var watched : List.of(folder, earthNavData, folder.resolve(TEXTURES))) {
+        entries.put(key(FOLDER_ENTRY, watched), modifiedOf(watched));
+      }
+      if (orthoFolders.contains(folder) && Files.isDirectory(earthNavData)) {
+        try (final var stream = Files.list(earthNavData)) {
+          stream
+              .filter(Files::isDirectory)
+              .forEach(subFolder -> entries.put(key(FOLDER_ENTRY, subFolder), modifiedOf(subFolder)));
+        } catch (IOException e) {
+          throw Exceptions.unrecoverable(e);
+        }
+      }
+    }
+    return new ScanSnapshot(entries);
+  }
+
+  /**
+   * Loads a snapshot from the given file.
+   *
+   * @param file Snapshot file
+   * @return Loaded snapshot, or empty if the file does not exist or cannot be read
+   */
+  public static Optional<ScanSnapshot> load(final Path file) {
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    try {
+      final var entries = new LinkedHashMap<String, String>();
+      for (final var line : Files.readAllLines(file)) {
+        final var fields = line.split("\t", 3);
+        if (fields.length == 3) {
+          entries.put(fields[0] + "\t" + fields[2], fields[1]);
+        }
+      }
+      return Optional.of(new ScanSnapshot(entries));
+    } catch (IOException e) {
+      LOG.debug("Failed to read scan-snapshot at {}", file, e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Writes the snapshot to the given file, replacing the previous one atomically.
+   *
+   * @param file Snapshot file
+   */
+  public void save(final Path file) {
+    final var lines =
+        entries.entrySet().stream()
+            .map(
+                entry -> {
+                  final var key = entry.getKey().split("\t", 2);
+                  return String.join("\t", key[0], entry.getValue(), key[1]);
+                })
+            .collect(Collectors.toList());
+    try {
+      Files.createDirectories(file.getParent());
+      final var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.write(tempFile, lines);
+      Files.move(
+          tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  /**
+   * Compares the snapshot against the current state. Only reads, never writes.
+   *
+   * @param fileSystem File-system the recorded paths belong to
+   * @return Files and folders that have changed since the snapshot was captured
+   */
+  public List<Path> findChanges(final FileSystem fileSystem) {
+    final var changes = new ArrayList<Path>();
+    entries.forEach(
+        (key, recorded) -> {
+          final var fields = key.split("\t", 2);
+          final var path = fileSystem.getPath(fields[1]);
+          final var current = FILE_ENTRY.equals(fields[0]) ? hashOf(path) : modifiedOf(path);
+          if (!current.equals(recorded)) {
+            LOG.debug("{} has changed (was {}, is {})", path, recorded, current);
+            changes.add(path);
+          }
+        });
+    return changes;
+  }
+
+  private static String key(final String type, final Path path) {
+    return type + "\t" + path.toAbsolutePath();
+  }
+
+  private static String modifiedOf(final Path folder) {
+    try {
+      return Files.isDirectory(folder)
+          ? Long.toString(Files.getLastModifiedTime(folder).toMillis())
+          : MISSING;
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+
+  private static String hashOf(final Path file) {
+    if (!Files.isRegularFile(file)) {
+      return MISSING;
+    }
+    try {
+      final var digest = MessageDigest.getInstance("MD5");
+      return OutputHelper.bytesToHex(digest.digest(Files.readAllBytes(file)));
+    } catch (IOException | NoSuchAlgorithmException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.helper.LinkFollowingWalker;
+import de.melb00m.tr4o.progress.ProgressTracker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Cached view on the content of a scenery-pack, from which the {@link OrthoDetector}s take their
+ * signals instead of looking up every path on their own.
+ *
+ * <p>The root of the pack is read once with a single directory-listing, which answers whether a
+ * file or folder exists. The attributes of an entry are only read when it is asked whether the
+ * entry is a directory, and on file-systems that deliver them with the listing (e.g. on Windows),
+ * no further call is needed for that. Nested paths (like {@code Earth nav data/apt.dat}) list the
+ * folders on their way once as well.
+ *
+ * <p>Entries are matched by their exact name first. Whether a name differing only in case refers to
+ * the same entry depends on the file-system (NTFS and APFS usually ignore the case, most Linux
+ * file-systems do not), so if the listing contains such a name, the file-system is asked once for
+ * the exact path. Names without any match in the listing are answered without a file-system call.
+ */
+public final class SceneryPackListing {
+
+  private static final Logger LOG = LogManager.getLogger(SceneryPackListing.class);
+
+  private final Path folder;
+  private final ProgressTracker progress;
+  /** Entries of the listed folders, mapped against the name delivered by the listing */
+  private final Map<Path, Map<String, Path>> listings = new HashMap<>();
+  /** Entries of the listed folders, mapped against their lower-case name */
+  private final Map<Path, Map<String, Path>> lowerCaseListings = new HashMap<>();
+  private final Map<Path, Optional<BasicFileAttributes>> attributes = new HashMap<>();
+  private int directoryListings;
+  private int attributeReads;
+  private int lookups;
+
+  /**
+   * @param folder Folder of the scenery-pack
+   * @param progress Tracker the file-operations are reported to
+   */
+  public SceneryPackListing(final Path folder, final ProgressTracker progress) {
+    this.folder = folder;
+    this.progress = progress;
+  }
+
+  /** @return Folder of the scenery-pack */
+  public Path getFolder() {
+    return folder;
+  }
+
+  /**
+   * @param relativePath Path relative to the scenery-pack
+   * @return {@code true} if the file or folder exists
+   */
+  public boolean exists(final String relativePath) {
+    lookups++;
+    return findListed(folder.resolve(relativePath)) != null;
+  }
+
+  /**
+   * @param relativePath Path relative to the scenery-pack
+   * @return {@code true} if the path exists and is a folder (following links)
+   */
+  public boolean isDirectory(final String relativePath) {
+    lookups++;
+    return isListedDirectory(folder.resolve(relativePath));
+  }
+
+  private boolean isListedDirectory(final Path path) {
+    final var listed = findListed(path);
+    return listed != null
+        && attributesOf(listed).map(BasicFileAttributes::isDirectory).orElse(false);
+  }
+
+  /** @return Entry of the listing the path refers to, or {@code null} if it does not exist */
+  private Path findListed(final Path path) {
+    final var dir = path.getParent();
+    final var name = path.getFileName().toString();
+    final var listed = entriesOf(dir).get(name);
+    if (listed != null) {
+      return listed;
+    }
+    final var variant = lowerCaseListings.get(dir).get(name.toLowerCase(Locale.ROOT));
+    if (variant == null) {
+      return null;
+    }
+    attributeReads++;
+    progress.fileOperations(1);
+    return Files.exists(path) ? variant : null;
+  }
+
+  private Map<String, Path> entriesOf(final Path dir) {
+    final var cached = listings.get(dir);
+    if (cached != null) {
+      return cached;
+    }
+    final var entries = new HashMap<String, Path>();
+    final var lowerCaseEntries = new HashMap<String, Path>();
+    if (dir.equals(folder) || (dir.startsWith(folder) && isListedDirectory(dir))) {
+      directoryListings++;
+      progress.fileOperations(1);
+      try (final var stream = Files.newDirectoryStream(dir)) {
+        for (final var entry : stream) {
+          final var name = entry.getFileName().toString();
+          entries.put(name, entry);
+          lowerCaseEntries.put(name.toLowerCase(Locale.ROOT), entry);
+        }
+      } catch (IOException | DirectoryIteratorException e) {
+        LOG.debug("Failed to list {}", dir, e);
+      }
+    }
+    listings.put(dir, entries);
+    lowerCaseListings.put(dir, lowerCaseEntries);
+    return entries;
+  }
+
+  private Optional<BasicFileAttributes> attributesOf(final Path listed) {
+    return attributes.computeIfAbsent(
+        listed,
+        path -> {
+          attributeReads++;
+          progress.fileOperations(1);
+          try {
+            return Optional.of(Files.readAttributes(path, BasicFileAttributes.class));
+          } catch (IOException e) {
+            LOG.debug("Failed to read attributes of {}", path, e);
+            return Optional.empty();
+          }
+        });
+  }
+
+  /**
+   * Walks a folder of the pack (following links). Unlike the lookups, walks are not cached.
+   *
+   * @param relativePath Folder relative to the scenery-pack
+   * @param visitor Receives every file and folder below the folder (including itself)
+   */
+  public void walk(final String relativePath, final Consumer<Path> visitor) {
+    new LinkFollowingWalker()
+        .walk(
+            folder.resolve(relativePath),
+            dir -> true,
+            path -> {
+              progress.fileOperations(1);
+              visitor.accept(path);
+            });
+  }
+
+  /** @return Number of directory-listings done for this pack */
+  public int getDirectoryListings() {
+    return directoryListings;
+  }
+
+  /** @return Number of attribute-reads done for this pack */
+  public int getAttributeReads() {
+    return attributeReads;
+  }
+
+  /**
+   * @return Number of lookups answered from this listing, each of which would have taken at least
+   *     one file-system call on its own
+   */
+  public int getLookups() {
+    return lookups;
+  }
+}
@@ -13,6 +13,9 @@ import java.util.regex.Pattern;
  */
 public class Tile implements Comparable<Tile> {
 
+  /** Number of 1x1 degree tiles that make up the whole globe */
+  public static final int GRID_SIZE = 180 * 360;
+
   private static final Pattern TILE_PATTERN =
       Pattern.compile(Transparency4Ortho.CONFIG.getString("overlay-scanner.tiles.input-pattern"));
 
@@ -25,6 +28,34 @@ public class Tile implements Comparable<Tile> {
     Verify.withErrorMessage("Invalid tile format: %s", tile).argument(matcher.matches());
     this.latitude = Integer.parseInt(matcher.group("lat"));
     this.longitude = Integer.parseInt(matcher.group("lon"));
+    verifyBounds();
+  }
+
+  /**
+   * @param latitude Latitude of the tile's south-west corner ({@code -90} to {@code 89})
+   * @param longitude Longitude of the tile's south-west corner ({@code -180} to {@code 179})
+   */
+  public Tile(final int latitude, final int longitude) {
+    this.latitude = latitude;
+    this.longitude = longitude;
+    verifyBounds();
+  }
+
+  /**
+   * Returns the tile for the given grid-index.
+   *
+   * @param index Grid-index as returned by {@link #toGridIndex()}
+   * @return Tile at the given index
+   */
+  public static Tile fromGridIndex(final int index) {
+    Verify.withErrorMessage("Invalid tile grid-index: %d", index)
+        .argument(index >= 0 && index < GRID_SIZE);
+    return new Tile(index / 360 - 90, index % 360 - 180);
+  }
+
+  private void verifyBounds() {
+    Verify.withErrorMessage("Tile out of bounds: %d/%d", latitude, longitude)
+        .argument(latitude >= -90 && latitude < 90 && longitude >= -180 && longitude < 180);
   }
 
   public int getLatitude() {
@@ -35,6 +66,27 @@ public class Tile implements Comparable<Tile> {
     return longitude;
   }
 
+  /**
+   * Returns the position of this tile in a row-major grid of all tiles on the globe, starting in
+   * the south-west at {@code -90/-180}.
+   *
+   * @return Grid-index between {@code 0} and {@link #GRID_SIZE} (exclusive)
+   */
+  public int toGridIndex() {
+    return (latitude + 90) * 360 + longitude + 180;
+  }
+
+  /**
+   * Returns the name of the 10x10 degree folder in {@code Earth nav data} that holds the DSF-file
+   * of this tile.
+   *
+   * @return Folder name (e.g. {@code +40+010} for tile {@code +47+011})
+   */
+  public String getDsfFolderName() {
+    return String.format(
+        "%+03d%+04d", Math.floorDiv(latitude, 10) * 10, Math.floorDiv(longitude, 10) * 10);
+  }
+
   @Override
   public int hashCode() {
     return Objects.hash(latitude, longitude);
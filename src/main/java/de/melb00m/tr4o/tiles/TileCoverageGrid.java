@@ -0,0 +1,86 @@
+package de.melb00m.tr4o.tiles;
+
+import java.nio.file.Path;
+import java.util.AbstractCollection;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Accumulates the ortho-covered tiles of a streaming scan in a fixed-size bit-grid of the globe.
+ *
+ * <p>Unlike {@link TilesScannerResult}, no DSF-paths are retained: the memory used is constant
+ * (one bit per tile of the globe) plus the names of the ortho-sceneries, no matter how many
+ * DSF-files are scanned.
+ *
+ * @see TilesScanner#streamOrthoScenery(TileCoverageListener)
+ */
+public class TileCoverageGrid implements TileCoverageListener {
+
+  private final BitSet coveredTiles = new BitSet(Tile.GRID_SIZE);
+  private final Set<Path> orthoFolders = new TreeSet<>();
+  private long dsfFiles;
+
+  @Override
+  public synchronized void tileCovered(final Path orthoFolder, final Path dsfFile, final Tile tile) {
+    coveredTiles.set(tile.toGridIndex());
+    orthoFolders.add(orthoFolder);
+    dsfFiles++;
+  }
+
+  /** @return Ortho-sceneries that provided at least one tile, in alphabetical order */
+  public Set<Path> getOrthoFolders() {
+    return Collections.unmodifiableSet(orthoFolders);
+  }
+
+  /** @return Number of DSF-files that were reported */
+  public long getDsfFileCount() {
+    return dsfFiles;
+  }
+
+  /** @return Number of distinct tiles that are covered */
+  public int getCoveredTileCount() {
+    return coveredTiles.cardinality();
+  }
+
+  /**
+   * Returns a view on the covered tiles. The {@link Tile}-objects are created while iterating, so
+   * the view does not hold any additional memory.
+   *
+   * @return Covered tiles, ordered from south-west to north-east
+   */
+  public Collection<Tile> getCoveredTiles() {
+    return new AbstractCollection<>() {
+      @Override
+      public Iterator<Tile> iterator() {
+        return new Iterator<>() {
+          private int next = coveredTiles.nextSetBit(0);
+
+          @Override
+          public boolean hasNext() {
+            return next >= 0;
+          }
+
+          @Override
+          public Tile next() {
+            if (next < 0) {
+              throw new NoSuchElementException();
+            }
+            final var tile = Tile.fromGridIndex(next);
+            next = coveredTiles.nextSetBit(next + 1);
+            return tile;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return getCoveredTileCount();
+      }
+    };
+  }
+}
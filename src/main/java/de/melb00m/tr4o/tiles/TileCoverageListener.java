@@ -0,0 +1,20 @@
+package de.melb00m.tr4o.tiles;
+
+import java.nio.file.Path;
+
+/**
+ * Receives the ortho-covered tiles from {@link TilesScanner#streamOrthoScenery(TileCoverageListener)}
+ * as soon as they are found.
+ */
+@FunctionalInterface
+public interface TileCoverageListener {
+
+  /**
+   * Called for every DSF-file found in an ortho-scenery.
+   *
+   * @param orthoFolder Ortho-scenery the DSF-file belongs to
+   * @param dsfFile DSF-file of the tile
+   * @param tile Tile covered by the DSF-file
+   */
+  void tileCovered(Path orthoFolder, Path dsfFile, Tile tile);
+}
@@ -0,0 +1,140 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.exceptions.Exceptions;
+import de.melb00m.tr4o.helper.FileHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Records which ortho-sceneries provide each tile, so that tiles can be dropped from the {@code
+ * library.txt} once no ortho-scenery provides them any more.
+ *
+ * <p>As a {@link TileCoverageListener}, it collects the provenance of the tiles of a scan. It is
+ * stored as a tab-separated text-file next to the {@code library.txt}: one line per tile, holding
+ * the tile followed by the absolute paths of the ortho-sceneries providing it.
+ */
+public class TileProvenance implements TileCoverageListener {
+
+  private static final Logger LOG = LogManager.getLogger(TileProvenance.class);
+  private static final String HEADER = "#provenance";
+
+  private final Map<Tile, Set<Path>> packsPerTile = new TreeMap<>();
+
+  /**
+   * Collects the provenance from the result of a scan.
+   *
+   * @param result Result of a scan
+   * @return Provenance of the tiles in the result
+   */
+  public static TileProvenance of(final TilesScannerResult result) {
+    final var provenance = new TileProvenance();
+    result
+        .getOrthoFolderToDsfMap()
+        .entries()
+        .forEach(
+            entry ->
+                provenance.add(
+                    new Tile(
+                        FileHelper.removeFileExtension(entry.getValue().getFileName().toString())),
+                    entry.getKey()));
+    return provenance;
+  }
+
+  /**
+   * Loads the provenance from the given file.
+   *
+   * @param file Provenance file
+   * @param fileSystem File-system the recorded ortho-sceneries reside on
+   * @return Loaded provenance, or an empty one if the file does not exist or cannot be read
+   */
+  public static TileProvenance load(final Path file, final FileSystem fileSystem) {
+    final var provenance = new TileProvenance();
+    if (!Files.isRegularFile(file)) {
+      return provenance;
+    }
+    try {
+      final var lines = Files.readAllLines(file);
+      if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+        LOG.warn("Tile provenance at {} is not valid and will be ignored", file);
+        return provenance;
+      }
+      for (final var line : lines.subList(1, lines.size())) {
+        final var fields = line.split("\t");
+        for (var idx = 1; idx < fields.length; idx++) {
+          provenance.add(new Tile(fields[0]), fileSystem.getPath(fields[idx]));
+        }
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.warn("Tile provenance at {} could not be read and will be ignored", file);
+      LOG.debug("Failed to read tile provenance", e);
+      return new TileProvenance();
+    }
+    return provenance;
+  }
+
+  @Override
+  public synchronized void tileCovered(final Path orthoFolder, final Path dsfFile, final Tile tile) {
+    add(tile, orthoFolder);
+  }
+
+  /**
+   * Records that an ortho-scenery provides a tile.
+   *
+   * @param tile Provided tile
+   * @param orthoFolder Ortho-scenery providing the tile
+   */
+  public synchronized void add(final Tile tile, final Path orthoFolder) {
+    packsPerTile.computeIfAbsent(tile, key -> new TreeSet<>()).add(orthoFolder.toAbsolutePath());
+  }
+
+  /** @return Tiles with a recorded provenance */
+  public synchronized Set<Tile> getTiles() {
+    return Collections.unmodifiableSet(packsPerTile.keySet());
+  }
+
+  /**
+   * @param tile Tile
+   * @return Ortho-sceneries providing the tile (empty if its provenance is not recorded)
+   */
+  public synchronized Set<Path> getPacks(final Tile tile) {
+    return Collections.unmodifiableSet(packsPerTile.getOrDefault(tile, Set.of()));
+  }
+
+  /**
+   * Writes the provenance to the given file, replacing it atomically.
+   *
+   * @param file Provenance file
+   */
+  public synchronized void save(final Path file) {
+    final var lines = new ArrayList<String>(packsPerTile.size() + 1);
+    lines.add(HEADER);
+    packsPerTile.forEach(
+        (tile, packs) -> {
+          final var fields = new ArrayList<String>(packs.size() + 1);
+          fields.add(tile.toString());
+          packs.forEach(pack -> fields.add(pack.toString()));
+          lines.add(String.join("\t", fields));
+        });
+    final var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(file.getParent());
+      Files.write(tempFile, lines);
+      Files.move(
+          tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw Exceptions.unrecoverable(e);
+    }
+  }
+}
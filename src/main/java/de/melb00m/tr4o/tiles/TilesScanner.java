@@ -1,10 +1,15 @@
 package de.melb00m.tr4o.tiles;
 
+import com.typesafe.config.ConfigRenderOptions;
 import de.melb00m.tr4o.app.Transparency4Ortho;
-import de.melb00m.tr4o.exceptions.Exceptions;
 import de.melb00m.tr4o.helper.FileHelper;
+import de.melb00m.tr4o.helper.LinkFollowingWalker;
 import de.melb00m.tr4o.helper.OutputHelper;
 import de.melb00m.tr4o.misc.Verify;
+import de.melb00m.tr4o.monitoring.DsfEnumerationEvent;
+import de.melb00m.tr4o.monitoring.EventStream;
+import de.melb00m.tr4o.monitoring.PackClassificationEvent;
+import de.melb00m.tr4o.progress.ProgressTracker;
 import org.apache.commons.collections4.multimap.HashSetValuedHashMap;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -13,11 +18,19 @@ import org.apache.logging.log4j.Logger;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -44,97 +57,404 @@ public class TilesScanner {
   private static final Pattern SCENERY_PACK_ENTRY_PATTERN =
       Pattern.compile(
           Transparency4Ortho.CONFIG.getString("overlay-scanner.regex.scenery-pack-entry"));
-  private static final Set<Pattern> ORTHO_FOLDER_NAME_PATTERNS =
-      Transparency4Ortho.CONFIG.getStringList("overlay-scanner.detection.orthos.folder-names-regex")
-          .stream()
-          .map(Pattern::compile)
-          .collect(Collectors.toUnmodifiableSet());
-  private static final Pattern ORTHO_TEXTURE_FILENAME_PATTERN =
-      Pattern.compile(
-          Transparency4Ortho.CONFIG.getString(
-              "overlay-scanner.detection.orthos.dds-filename-regex"),
-          Pattern.CASE_INSENSITIVE);
-  private static final Set<Path> ORTHO_DETECTION_EXCLUDERS =
-      Transparency4Ortho.CONFIG.getStringList("overlay-scanner.detection.orthos.excluder-files")
-          .stream()
-          .map(Path::of)
-          .collect(Collectors.toUnmodifiableSet());
-  private static final Set<Path> ORTHO_DETECTION_INCLUDERS =
-      Transparency4Ortho.CONFIG.getStringList("overlay-scanner.detection.orthos.includer-files")
-          .stream()
-          .map(Path::of)
-          .collect(Collectors.toUnmodifiableSet());
-
   private final Transparency4Ortho command;
   private final Path xPlaneRootDir;
+  private final Path sceneryPacksFile;
+  private final List<Path> sceneryPackOrder;
   private final Set<Path> sceneryDirectories;
+  private final OrthoDetectorChain detectors;
+  private final Path detectorStatisticsFile;
+  private final boolean packManifests;
+  private final String detectionSettings;
+  /** Valid manifests found while classifying, and the rules of packs classified without one */
+  private final Map<Path, PackManifest> classifiedByManifest = new HashMap<>();
+  private final Map<Path, String> classifiedByRule = new HashMap<>();
+  private final EventStream events;
 
   public TilesScanner(final Transparency4Ortho command) {
+    this(command, command.getEventStream());
+  }
+
+  /**
+   * @param command Command to scan for
+   * @param events Stream to emit the events of the scan to, instead of the command's
+   */
+  TilesScanner(final Transparency4Ortho command, final EventStream events) {
     this.command = command;
+    this.events = events;
     this.xPlaneRootDir = command.getXPlanePath();
-    this.sceneryDirectories = calcXplaneSceneryFolders();
+    this.sceneryPacksFile =
+        xPlaneRootDir.resolve(command.config().getString("overlay-scanner.scenery-packs-file"));
+    this.sceneryPackOrder = calcXplaneSceneryFolders();
+    this.sceneryDirectories = Set.copyOf(sceneryPackOrder);
+    this.detectors =
+        new OrthoDetectorChain(
+            OrthoDetectors.create(command.config().getConfig("overlay-scanner")),
+            command.config().getDouble("overlay-scanner.detection.ordering-prior-weight"));
+    this.detectorStatisticsFile =
+        xPlaneRootDir.resolve(command.config().getString("libgen.state.detector-statistics"));
+    detectors.loadStatistics(detectorStatisticsFile);
+    this.packManifests = command.config().getBoolean("overlay-scanner.pack-manifests.enabled");
+    this.detectionSettings = calcDetectionSettings();
   }
 
-  private Set<Path> calcXplaneSceneryFolders() {
-    final var sceneryPacksFile =
-        xPlaneRootDir.resolve(command.config().getString("overlay-scanner.scenery-packs-file"));
+  /** @return Settings the verdicts of the detectors depend on, including the custom detectors */
+  private String calcDetectionSettings() {
+    return command
+        .config()
+        .getConfig("overlay-scanner.detection")
+        .withoutPath("ordering-prior-weight")
+        .root()
+        .render(ConfigRenderOptions.concise());
+  }
+
+  private List<Path> calcXplaneSceneryFolders() {
     try {
       return Files.readAllLines(sceneryPacksFile).stream()
           .map(SCENERY_PACK_ENTRY_PATTERN::matcher)
           .filter(Matcher::matches)
-          .map(match -> Paths.get(match.group("scenerypath")))
+          .map(match -> xPlaneRootDir.getFileSystem().getPath(match.group("scenerypath")))
           .map(path -> path.isAbsolute() ? path : xPlaneRootDir.resolve(path))
-          .collect(Collectors.toUnmodifiableSet());
+          .distinct()
+          .collect(Collectors.toUnmodifiableList());
     } catch (IOException e) {
       throw new IllegalStateException(
           String.format("Failed to read sceneries from %s", sceneryPacksFile));
     }
   }
 
+  /** @return The {@code scenery_packs.ini} the scenery-folders are read from */
+  public Path getSceneryPacksFile() {
+    return sceneryPacksFile;
+  }
+
+  /**
+   * @return Scenery-folders in the order of the {@code scenery_packs.ini}, i.e. from the highest to
+   *     the lowest priority
+   */
+  public List<Path> getSceneryPackOrder() {
+    return sceneryPackOrder;
+  }
+
+  /** @return Folders that are scanned for ortho-scenery */
+  public Set<Path> getScannedFolders() {
+    return command.getOrthoSceneryPaths().orElse(sceneryDirectories);
+  }
+
   /**
    * Scans the X-Plane-folder for ortho-tiles and {@link TilesScannerResult}-object representing the
    * results in a structured form.
    *
-   * @return Result of the scan
+   * @return Result of the scan, which tells whether it is complete
+   * @see TilesScannerResult#isComplete()
    */
   public TilesScannerResult scanForOrthoScenery() {
     final var orthoFolderToDsfMap = new HashSetValuedHashMap<Path, Path>();
-    final var orthoFolders =
-        findOrthoDirectories(command.getOrthoSceneryPaths().orElse(sceneryDirectories));
+    final var complete =
+        streamOrthoScenery(
+            (orthoFolder, dsfFile, tile) -> orthoFolderToDsfMap.put(orthoFolder, dsfFile));
+    return new TilesScannerResult(orthoFolderToDsfMap, complete);
+  }
 
-    orthoFolders.forEach(
-        folder ->
-            Verify.withErrorMessage(
-                    "Ortho-scenery does not contain required '%s'-folder: %s",
-                    EARTH_NAV_DATA, folder)
-                .argument(Files.isDirectory(folder.resolve(EARTH_NAV_DATA))));
+  /**
+   * Scans the X-Plane-folder for ortho-tiles and reports each of them to the given listener as soon
+   * as it is found, without keeping any of them in memory.
+   *
+   * @param listener Listener receiving the ortho-covered tiles
+   * @return {@code true} if all scenery-packs were scanned, {@code false} if the result is partial
+   * @see TileCoverageGrid
+   */
+  public boolean streamOrthoScenery(final TileCoverageListener listener) {
+    return streamOrthoScenery(listener, ScanCheckpoint.none());
+  }
+
+  /**
+   * Scans the X-Plane-folder for ortho-tiles and reports each of them to the given listener as soon
+   * as it is found, without keeping any of them in memory.
+   *
+   * <p>Every scenery-pack is scanned on its own: a pack that fails is reported and skipped, and the
+   * tiles of an ortho-scenery are only reported once all of its DSF-files have been found. Each
+   * completed pack is recorded in the checkpoint, and packs that are already recorded there are
+   * not scanned again. If a time budget is set, no further packs are scanned once it is used up.
+   *
+   * <p>If pack-manifests are enabled, the DSF-files of an ortho-scenery with a valid {@link
+   * PackManifest} are taken from it, and a manifest is written into every other ortho-scenery once
+   * it has been scanned.
+   *
+   * <p>With {@code --scanWorkers}, the scan is split across several worker-processes, and the
+   * checkpoint is only cleared once all of them have completed their share.
+   *
+   * @param listener Listener receiving the ortho-covered tiles
+   * @param checkpoint Checkpoint to record the progress in and to resume from
+   * @return {@code true} if all scenery-packs were scanned, {@code false} if the result is partial
+   *     (because packs failed or the time budget was used up)
+   * @see TileCoverageGrid
+   * @see DistributedScan
+   * @see #openCheckpoint()
+   */
+  public boolean streamOrthoScenery(
+      final TileCoverageListener listener, final ScanCheckpoint checkpoint) {
+    if (command.getScanWorkers().isPresent()) {
+      final var complete =
+          new DistributedScan(command, getScannedFolders(), command.getScanWorkers().get())
+              .run(listener);
+      if (complete) {
+        checkpoint.delete();
+      }
+      return complete;
+    }
+    return scanFolders(getScannedFolders(), listener, checkpoint);
+  }
+
+  /**
+   * Scans only the given folders, as a worker of a {@link DistributedScan}.
+   *
+   * @param shard Scenery-folders to scan
+   * @param listener Listener receiving the ortho-covered tiles
+   * @return {@code true} if all folders were scanned, {@code false} if the result is partial
+   */
+  boolean scanShard(final Collection<Path> shard, final TileCoverageListener listener) {
+    return scanFolders(shard, listener, ScanCheckpoint.none());
+  }
+
+  private boolean scanFolders(
+      final Collection<Path> folders,
+      final TileCoverageListener listener,
+      final ScanCheckpoint checkpoint) {
+    final var scan = new ScanRun(command.getTimeBudget(), events);
+    final var orthoFolders = findOrthoDirectories(folders, checkpoint, scan);
+
+    // DSF-files linked into several ortho-sceneries are only reported once
+    final var dsfWalker = new LinkFollowingWalker();
+    var resumedFolders = 0;
+    var manifestFolders = 0;
+    for (final var dir : orthoFolders) {
+      final var resumed = checkpoint.getCompletedPack(dir);
+      final var dsfTiles = new LinkedHashMap<Path, Tile>();
+      if (resumed.isPresent()) {
+        forEachRecordedDsfFile(
+            resumed.get(), dsfWalker, dsf -> dsfTiles.put(dsf, extractTileFromDsfFile(dsf)));
+        resumedFolders++;
+      } else if (scan.hasTimeLeft()) {
+        try {
+          Verify.withErrorMessage(
+                  "Ortho-scenery does not contain required '%s'-folder: %s", EARTH_NAV_DATA, dir)
+              .argument(Files.isDirectory(dir.resolve(EARTH_NAV_DATA)));
+          final Consumer<Path> action = dsf -> dsfTiles.put(dsf, extractTileFromDsfFile(dsf));
+          final var manifest = findManifest(dir);
+          if (manifest.isPresent()) {
+            forEachRecordedDsfFile(manifest.get().getDsfFiles(), dsfWalker, action);
+            manifestFolders++;
+          } else {
+            final var newManifest =
+                packManifests
+                    ? Optional.of(
+                        PackManifest.capture(
+                            dir,
+                            classifiedByRule.getOrDefault(dir, "checkpoint"),
+                            detectionSettings,
+                            command.getProgressTracker()))
+                    : Optional.<PackManifest>empty();
+            final var aliases = dsfWalker.getAliases().size();
+            forEachDsfFile(dir.resolve(EARTH_NAV_DATA), dsfWalker, action);
+            // without the DSF-files reached through other packs, the list depends on those packs
+            newManifest
+                .filter(created -> dsfWalker.getAliases().size() == aliases)
+                .ifPresent(created -> created.withDsfFiles(dsfTiles.keySet()).save());
+          }
+        } catch (RuntimeException e) {
+          scan.failed(dir, e);
+          continue;
+        }
+        checkpoint.recordCompletedPack(dir, dsfTiles.keySet());
+      } else {
+        scan.skipped(dir);
+        continue;
+      }
+      dsfTiles.forEach((dsf, tile) -> listener.tileCovered(dir, dsf, tile));
+      events.emit(
+          "tiles-found",
+          "path",
+          dir.toAbsolutePath(),
+          "tiles",
+          dsfTiles.values().stream().distinct().sorted().collect(Collectors.toList()));
+    }
+    LOG.debug(
+        "{} of {} ortho-sceneries were read from their manifest, {} from the checkpoint",
+        manifestFolders,
+        orthoFolders.size(),
+        resumedFolders);
+    reportAliases("paths below " + EARTH_NAV_DATA, dsfWalker, Level.DEBUG);
+
+    if (scan.isComplete()) {
+      checkpoint.delete();
+      return true;
+    }
+    scan.report();
+    return false;
+  }
 
-    orthoFolders.forEach(
-        dir ->
-            getDsfFilesFromPath(dir.resolve(EARTH_NAV_DATA))
-                .forEach(dsf -> orthoFolderToDsfMap.put(dir, dsf)));
+  private Optional<PackManifest> findManifest(final Path orthoFolder) {
+    if (!packManifests) {
+      return Optional.empty();
+    }
+    final var loaded = classifiedByManifest.get(orthoFolder);
+    // packs classified by the checkpoint or a previous scan have not been looked at yet
+    return loaded != null || classifiedByRule.containsKey(orthoFolder)
+        ? Optional.ofNullable(loaded)
+        : PackManifest.load(orthoFolder, detectionSettings, command.getProgressTracker());
+  }
 
-    return new TilesScannerResult(orthoFolderToDsfMap);
+  /**
+   * Opens the checkpoint of the scan. With {@code --resume}, the progress of a previous scan that
+   * did not complete is continued, as long as the scanned folders have not changed since.
+   *
+   * @return Checkpoint for {@link #streamOrthoScenery(TileCoverageListener, ScanCheckpoint)}
+   */
+  public ScanCheckpoint openCheckpoint() {
+    final var parts = new ArrayList<String>();
+    sceneryDirectories.forEach(dir -> parts.add("pack:" + dir.toAbsolutePath()));
+    getScannedFolders().forEach(dir -> parts.add("scan:" + dir.toAbsolutePath()));
+    return ScanCheckpoint.open(
+        xPlaneRootDir.resolve(command.config().getString("libgen.state.scan-checkpoint")),
+        ScanCheckpoint.fingerprint(parts),
+        command.isResume());
   }
 
-  private Set<Path> findOrthoDirectories(final Collection<Path> in) {
+  private Set<Path> findOrthoDirectories(
+      final Collection<Path> in, final ScanCheckpoint checkpoint, final ScanRun scan) {
     LOG.info("Scanning your X-Plane installation for ortho-sceneries (this may take a moment)");
-    return OutputHelper.maybeShowWithProgressBar(
-            "Scanning for Orthos", in.stream(), Level.TRACE, command)
-        .flatMap(FileHelper::walk)
-        .filter(this::isPotentialOrthoTilesDirectory)
-        .collect(Collectors.toSet());
-  }
-
-  private Set<Path> getDsfFilesFromPath(final Path source) {
-    try (final var stream = Files.walk(source)) {
-      return stream
-          .filter(
-              path -> DSF_TILE_FILENAME_PATTERN.matcher(path.getFileName().toString()).matches())
-          .collect(Collectors.toUnmodifiableSet());
-    } catch (IOException e) {
-      throw Exceptions.unrecoverable(e);
+    final var progress = command.getProgressTracker();
+    progress.reset(ProgressTracker.Counter.PACKS_SCANNED, ProgressTracker.Counter.FILES_VISITED);
+    progress.addEstimate(ProgressTracker.Counter.PACKS_SCANNED, in.size());
+    try (final var display =
+        OutputHelper.maybeShowProgress(
+                "Scanning for Orthos",
+                progress,
+                ProgressTracker.Counter.PACKS_SCANNED,
+                Level.TRACE,
+                command)
+            .withExtraMessage(
+                () ->
+                    String.format(
+                        "%d files visited", progress.get(ProgressTracker.Counter.FILES_VISITED)))) {
+      // scenery-packs themselves are not descended into, as their content is not needed for the
+      // classification, and the same physical pack is only classified once
+      final var walker = new LinkFollowingWalker();
+      final var orthoFolders = new TreeSet<Path>();
+      for (final var folder : new TreeSet<>(in)) {
+        progress.increment(ProgressTracker.Counter.PACKS_SCANNED);
+        final var classified = checkpoint.getClassification(folder);
+        if (classified.isPresent()) {
+          orthoFolders.addAll(classified.get());
+          continue;
+        }
+        if (!scan.hasTimeLeft()) {
+          scan.skipped(folder);
+          continue;
+        }
+        final var found = new ArrayList<Path>();
+        try {
+          walker.walk(
+              folder,
+              dir -> !sceneryDirectories.contains(dir.toAbsolutePath()),
+              path -> {
+                progress.increment(ProgressTracker.Counter.FILES_VISITED);
+                if (isPotentialOrthoTilesDirectory(path)) {
+                  found.add(path);
+                }
+              });
+        } catch (RuntimeException e) {
+          scan.failed(folder, e);
+          continue;
+        }
+        checkpoint.recordClassification(folder, found);
+        orthoFolders.addAll(found);
+      }
+      reportAliases("scenery-folders", walker, Level.INFO);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Ortho-detectors, in the order they are run for this installation:");
+        detectors.report().forEach(line -> LOG.debug("     {}", line));
+      }
+      detectors.saveStatistics(detectorStatisticsFile);
+      return orthoFolders;
+    }
+  }
+
+  private void reportAliases(
+      final String kind, final LinkFollowingWalker walker, final Level detailLevel) {
+    final var aliases = walker.getAliases();
+    if (aliases.isEmpty()) {
+      return;
     }
+    LOG.info(
+        "{} linked {} were skipped, as they point to content that is already scanned",
+        aliases.size(),
+        kind);
+    aliases.entries().stream()
+        .sorted(Map.Entry.comparingByValue())
+        .forEach(alias -> LOG.log(detailLevel, "     {} > {}", alias.getValue(), alias.getKey()));
+  }
+
+  private void forEachDsfFile(
+      final Path source, final LinkFollowingWalker walker, final Consumer<Path> action) {
+    final var event = new DsfEnumerationEvent();
+    event.begin();
+    // the walk visits the files on this thread, and only counts them if the event is recorded
+    final var recorded = event.isEnabled();
+    final var counts = new long[2];
+    final var progress = command.getProgressTracker();
+    walker.walk(
+        source,
+        dir -> true,
+        path -> {
+          progress.increment(ProgressTracker.Counter.FILES_VISITED);
+          final var dsfFile =
+              DSF_TILE_FILENAME_PATTERN.matcher(path.getFileName().toString()).matches();
+          if (recorded) {
+            counts[0]++;
+            counts[1] += dsfFile ? 1 : 0;
+          }
+          if (dsfFile) {
+            action.accept(path);
+          }
+        });
+    if (event.shouldCommit()) {
+      event.path = source.toString();
+      event.filesVisited = counts[0];
+      event.dsfFiles = counts[1];
+      event.commit();
+    }
+  }
+
+  /**
+   * Passes on DSF-files recorded by an earlier scan, after registering them with the walker, so a
+   * DSF-file linked into several packs is still only reported once. This costs one attribute-read
+   * per DSF-file, but no enumeration.
+   *
+   * @param dsfFiles Recorded DSF-files
+   * @param walker Walker that the DSF-files are registered with
+   * @param action Receives the DSF-files that were not reached through another pack before
+   */
+  private void forEachRecordedDsfFile(
+      final Collection<Path> dsfFiles,
+      final LinkFollowingWalker walker,
+      final Consumer<Path> action) {
+    final var progress = command.getProgressTracker();
+    for (final var dsfFile : dsfFiles) {
+      progress.increment(ProgressTracker.Counter.FILES_VISITED);
+      try {
+        if (walker.visit(dsfFile, Files.readAttributes(dsfFile, BasicFileAttributes.class))) {
+          action.accept(dsfFile);
+        }
+      } catch (IOException e) {
+        LOG.debug("Recorded DSF-file {} is gone, skipping it", dsfFile);
+      }
+    }
+  }
+
+  private static Tile extractTileFromDsfFile(final Path dsfFile) {
+    return new Tile(FileHelper.removeFileExtension(dsfFile.getFileName().toString()));
   }
 
   private boolean isPotentialOrthoTilesDirectory(final Path dir) {
@@ -145,64 +465,96 @@ public class TilesScanner {
           dir);
       return false;
     }
-    // basic check: needs to be a directory and contain Earth nav data
-    if (!Files.isDirectory(dir.resolve(EARTH_NAV_DATA))) {
+    final var event = new PackClassificationEvent();
+    event.begin();
+    final var manifest =
+        packManifests
+            ? PackManifest.load(dir, detectionSettings, command.getProgressTracker())
+            : Optional.<PackManifest>empty();
+    if (manifest.isPresent()) {
       LOG.trace(
-          "{} is NOT an ortho-folder, as it does not contain an {} folder", dir, EARTH_NAV_DATA);
-      return false;
-    }
-    // may not contain any file that signals it is _not_ an ortho-scenery dir
-    var excluder = firstMatchInFolder(dir, ORTHO_DETECTION_EXCLUDERS);
-    if (excluder.isPresent()) {
-      LOG.trace("{} is NOT an ortho-folder as it contains excluder-file {}", dir, excluder.get());
-      return false;
-    }
-    // well-known folder names that match ortho-scenery
-    if (ORTHO_FOLDER_NAME_PATTERNS.stream()
-        .anyMatch(pattern -> pattern.matcher(dir.getFileName().toString()).matches())) {
-      LOG.trace("{} is likely an ortho-folder due to it's directory-name", dir);
+          "{} is an ortho-folder, as recorded in its manifest ({})", dir, manifest.get().getRule());
+      classifiedByManifest.put(dir, manifest.get());
+      emitClassified(dir, true, "manifest");
+      if (event.shouldCommit()) {
+        event.path = dir.toString();
+        event.orthoScenery = true;
+        event.rule = "manifest";
+        event.commit();
+      }
       return true;
     }
-    // contained files that indicate ortho-scenery
-    var includer = firstMatchInFolder(dir, ORTHO_DETECTION_INCLUDERS);
-    if (includer.isPresent()) {
-      LOG.trace(
-          "{} is likely an ortho-folder as it contains includer-file {}", dir, includer.get());
-      return true;
+    final var listing = new SceneryPackListing(dir, command.getProgressTracker());
+    final var rule = detectors.classify(listing);
+    final var orthoScenery = detectors.isOrthoScenery(rule);
+    LOG.trace("{} is {}an ortho-folder, as decided by {}", dir, orthoScenery ? "" : "NOT ", rule);
+    if (orthoScenery) {
+      classifiedByRule.put(dir, rule);
     }
-    // This last check is a little more expensive, as we check for DDS tile-textures with matching
-    // ortho-style naming
-    var texturesDir = dir.resolve("textures");
-    if (Files.isDirectory(texturesDir) && folderContainsOnlyOrthoDdsTextures(texturesDir)) {
-      LOG.trace(
-          "{} is likely an ortho-folder as it contains only ortho-style-named DDS-textures", dir);
-      return true;
+    emitClassified(dir, orthoScenery, rule);
+    if (event.shouldCommit()) {
+      event.path = dir.toString();
+      event.orthoScenery = orthoScenery;
+      event.rule = rule;
+      event.fileSystemCalls = listing.getDirectoryListings() + listing.getAttributeReads();
+      event.commit();
     }
-    LOG.trace("{} is NOT an ortho-folder, as nothing was found that would indicate it was", dir);
-    return false;
+    return orthoScenery;
   }
 
-  private Optional<Path> firstMatchInFolder(
-      final Path rootFolder, final Collection<Path> localLookup) {
-    var match = localLookup.stream().map(rootFolder::resolve).filter(Files::exists).findFirst();
-    return match.map(rootFolder::relativize);
-  }
-
-  private boolean folderContainsOnlyOrthoDdsTextures(final Path texturesFolder) {
-    try (final var textureStream = Files.walk(texturesFolder)) {
-      final Set<Path> ddsTextures =
-          textureStream
-              .filter(file -> file.getFileName().toString().toLowerCase().endsWith(".dds"))
-              .collect(Collectors.toSet());
-      return !ddsTextures.isEmpty()
-          && ddsTextures.stream()
-              .allMatch(
-                  dds ->
-                      ORTHO_TEXTURE_FILENAME_PATTERN
-                          .matcher(dds.getFileName().toString())
-                          .matches());
-    } catch (IOException e) {
-      throw Exceptions.unrecoverable(e);
+  private void emitClassified(final Path dir, final boolean orthoScenery, final String rule) {
+    events.emit(
+        "pack-classified",
+        "path",
+        dir.toAbsolutePath(),
+        "orthoScenery",
+        orthoScenery,
+        "reason",
+        rule);
+  }
+
+  /** Failures and the time budget of a single scan */
+  private static final class ScanRun {
+
+    private final Optional<Long> deadline;
+    private final EventStream events;
+    private final Map<Path, String> failures = new TreeMap<>();
+    private final Set<Path> skipped = new TreeSet<>();
+
+    private ScanRun(final Optional<Duration> timeBudget, final EventStream events) {
+      this.deadline = timeBudget.map(budget -> System.nanoTime() + budget.toNanos());
+      this.events = events;
+    }
+
+    private boolean hasTimeLeft() {
+      return deadline.map(end -> System.nanoTime() - end < 0).orElse(true);
+    }
+
+    private void failed(final Path folder, final RuntimeException e) {
+      LOG.warn("Failed to scan {}, it is skipped: {}", folder, e.getMessage());
+      LOG.debug("Scan of {} failed", folder, e);
+      failures.put(folder, e.getMessage());
+      events.emit("error", "path", folder.toAbsolutePath(), "message", e.getMessage());
+    }
+
+    private void skipped(final Path folder) {
+      skipped.add(folder);
+    }
+
+    private boolean isComplete() {
+      return failures.isEmpty() && skipped.isEmpty();
+    }
+
+    private void report() {
+      if (!failures.isEmpty()) {
+        LOG.warn("{} folders could not be scanned and were skipped:", failures.size());
+        failures.forEach((folder, message) -> LOG.warn("     {} ({})", folder, message));
+      }
+      if (!skipped.isEmpty()) {
+        LOG.warn(
+            "The time budget was used up before {} folders could be scanned", skipped.size());
+        skipped.forEach(folder -> LOG.debug("     {}", folder));
+      }
     }
   }
 }
@@ -9,6 +9,7 @@ import org.apache.commons.collections4.multimap.UnmodifiableMultiValuedMap;
 
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -23,11 +24,16 @@ public class TilesScannerResult {
 
   private final MultiValuedMap<Path, Path> orthoFolderToDsfMap;
   private final LazyAttribute<MultiValuedMap<Tile, Path>> tileToOrthoDsfMap;
+  private final LazyAttribute<CoverageIndex> coverageIndex;
+  private final boolean complete;
 
-  TilesScannerResult(final MultiValuedMap<Path, Path> orthoFolderToDsfMap) {
+  TilesScannerResult(
+      final MultiValuedMap<Path, Path> orthoFolderToDsfMap, final boolean complete) {
     this.orthoFolderToDsfMap = MultiMapUtils.unmodifiableMultiValuedMap(orthoFolderToDsfMap);
+    this.complete = complete;
     this.tileToOrthoDsfMap =
         new LazyAttribute<>(() -> extractTileMap(this.orthoFolderToDsfMap.values()));
+    this.coverageIndex = new LazyAttribute<>(() -> new CoverageIndex(this.orthoFolderToDsfMap));
   }
 
   private static MultiValuedMap<Tile, Path> extractTileMap(final Collection<Path> paths) {
@@ -49,8 +55,66 @@ public class TilesScannerResult {
     return tileToOrthoDsfMap.get().keySet();
   }
 
+  /**
+   * @return {@code true} if all scenery-packs were scanned, {@code false} if the result only covers
+   *     some of them (because packs failed or the time budget was used up)
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
   /** @return Found ortho-DSF files mapped against the ortho-directory */
   public MultiValuedMap<Path, Path> getOrthoFolderToDsfMap() {
     return orthoFolderToDsfMap;
   }
+
+  /**
+   * Returns all ortho-sceneries that provide at least one tile inside the given region.
+   *
+   * @param box Region to look up
+   * @return Ortho-folders covering (parts of) the region, in alphabetical order
+   */
+  public Set<Path> findOrthoFoldersInRegion(final BoundingBox box) {
+    return coverageIndex.get().findPacks(box);
+  }
+
+  /**
+   * Returns the share of tiles inside the given region that are covered by ortho-scenery.
+   *
+   * @param box Region to look up
+   * @return Coverage in percent ({@code 0} to {@code 100})
+   */
+  public double getCoveragePercentage(final BoundingBox box) {
+    return coverageIndex.get().getCoveragePercentage(box);
+  }
+
+  /**
+   * Returns the number of tiles inside the given region that are covered by ortho-scenery.
+   *
+   * @param box Region to look up
+   * @return Number of covered tiles
+   */
+  public int countCoveredTiles(final BoundingBox box) {
+    return coverageIndex.get().countCoveredTiles(box);
+  }
+
+  /**
+   * Returns all ortho-sceneries that provide the given tile.
+   *
+   * @param tile Tile to look up
+   * @return Ortho-folders providing the tile (empty if it is not covered)
+   */
+  public Set<Path> getOrthoFoldersForTile(final Tile tile) {
+    return coverageIndex.get().getPacksForTile(tile);
+  }
+
+  /**
+   * Returns all tiles inside the given region that are not covered by any ortho-scenery.
+   *
+   * @param box Region to look up
+   * @return Uncovered tiles, ordered from south-west to north-east
+   */
+  public List<Tile> getUncoveredTiles(final BoundingBox box) {
+    return coverageIndex.get().getUncoveredTiles(box);
+  }
 }
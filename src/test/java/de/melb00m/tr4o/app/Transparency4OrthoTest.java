@@ -0,0 +1,78 @@
+package de.melb00m.tr4o.app;
+
+import de.melb00m.tr4o.server.ServerProtocol;
+import org.junit.Test;
+import picocli.CommandLine;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class Transparency4OrthoTest {
+
+  private static Optional<String> requestFor(final String... args) {
+    final var command = new Transparency4Ortho();
+    new CommandLine(command).parseArgs(args);
+    return command.buildServerRequest();
+  }
+
+  @Test
+  public void forwardsPlainCalls() {
+    assertEquals(Optional.of(ServerProtocol.GENERATE), requestFor("/xp"));
+    assertEquals(
+        Optional.of(ServerProtocol.GENERATE + " " + ServerProtocol.REMOVE_EXISTING),
+        requestFor("/xp", "-r"));
+    assertEquals(Optional.of(ServerProtocol.STATUS), requestFor("/xp", "--check"));
+    assertEquals(
+        Optional.of(ServerProtocol.QUERY + " +47+011"), requestFor("/xp", "-q", "+47+011"));
+    assertEquals(Optional.of(ServerProtocol.SHUTDOWN), requestFor("/xp", "--stopServer"));
+  }
+
+  @Test
+  public void runsLocallyWithOptionsTheServerDoesNotKnow() {
+    final String[][] localOptions = {
+      {"--server"},
+      {"--noServer"},
+      {"--regenerateLibrary"},
+      {"--regenerateLibrary", "--deltaSync"},
+      {"--deltaSync"},
+      {"--rollback"},
+      {"--analyzeOverlaps"},
+      {"--resume"},
+      {"--timeBudget", "5"},
+      {"--scanWorkers", "2"},
+      {"--scanShard"},
+      {"--background"},
+      {"--events", "ndjson"},
+      {"--recordJfr", "run.jfr"},
+      {"-s"},
+      {"-i"},
+      {"-v"},
+      {"--trace"},
+      {"--detailsToLogFileOnly"},
+      {"/xp/Custom Scenery/Orthos"},
+    };
+    for (final var options : localOptions) {
+      final var args = new String[options.length + 1];
+      args[0] = "/xp";
+      System.arraycopy(options, 0, args, 1, options.length);
+      assertEquals(String.join(" ", options), Optional.empty(), requestFor(args));
+      // the same options also keep checks and queries local
+      final var checkArgs = new String[args.length + 1];
+      System.arraycopy(args, 0, checkArgs, 0, args.length);
+      checkArgs[args.length] = "--check";
+      assertNotEquals(
+          String.join(" ", options),
+          Optional.of(ServerProtocol.STATUS),
+          requestFor(checkArgs));
+    }
+  }
+
+  @Test
+  public void configFingerprintIsStable() {
+    assertEquals(
+        new Transparency4Ortho().getConfigFingerprint(),
+        new Transparency4Ortho().getConfigFingerprint());
+  }
+}
@@ -0,0 +1,38 @@
+package de.melb00m.tr4o.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ServerEndpointTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void publishedEndpointKeepsTokenAndConfig() throws Exception {
+    final var file = folder.getRoot().toPath().resolve("server.properties");
+    final var endpoint = ServerEndpoint.create(4711, "abc");
+    endpoint.publish(file);
+
+    final var read = ServerEndpoint.read(file).orElseThrow();
+    assertEquals(endpoint, read);
+    assertTrue(read.accepts(endpoint.getToken()));
+    assertFalse(read.accepts("wrong"));
+    assertFalse(read.accepts(null));
+    assertTrue(read.servesConfig("abc"));
+    assertFalse(read.servesConfig("def"));
+  }
+
+  @Test
+  public void endpointWithoutConfigServesNoClient() throws Exception {
+    final var file = folder.getRoot().toPath().resolve("server.properties");
+    Files.writeString(file, "port=4711\ntoken=abc\n");
+    assertFalse(ServerEndpoint.read(file).orElseThrow().servesConfig("abc"));
+  }
+}
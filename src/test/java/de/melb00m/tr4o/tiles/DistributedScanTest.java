@@ -0,0 +1,47 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.progress.ProgressTracker;
+import org.apache.commons.collections4.MultiValuedMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DistributedScanTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Map<Path, Set<Path>> dsfFilesPerPack(final MultiValuedMap<Path, Path> result) {
+    return result.keySet().stream()
+        .collect(Collectors.toMap(pack -> pack, pack -> new HashSet<>(result.get(pack))));
+  }
+
+  @Test
+  public void workersFindTheSameTilesAsASingleProcess() throws Exception {
+    final var install = SyntheticInstall.create(folder.getRoot().toPath().resolve("X-Plane 11"));
+
+    // the distributed scan runs first, so neither scan takes its tiles from pack-manifests
+    final var command = SyntheticInstall.command(install, "--scanWorkers", "2");
+    final var scanner = new TilesScanner(command);
+    final var distributed = scanner.scanForOrthoScenery();
+    final var single = new TilesScanner(SyntheticInstall.command(install)).scanForOrthoScenery();
+
+    assertTrue(distributed.isComplete());
+    assertEquals(
+        dsfFilesPerPack(single.getOrthoFolderToDsfMap()),
+        dsfFilesPerPack(distributed.getOrthoFolderToDsfMap()));
+    // the progress of the workers is added up by the coordinator
+    final var progress = command.getProgressTracker();
+    assertEquals(
+        scanner.getScannedFolders().size(), progress.get(ProgressTracker.Counter.PACKS_SCANNED));
+    assertTrue(progress.get(ProgressTracker.Counter.FILES_VISITED) > 0);
+  }
+}
@@ -0,0 +1,78 @@
+package de.melb00m.tr4o.tiles;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import de.melb00m.tr4o.progress.ProgressTracker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PackManifestTest {
+
+  private static final String DETECTION = "{\"orthos\":{}}";
+
+  private final ProgressTracker progress = new ProgressTracker();
+  private FileSystem fileSystem;
+  private Path pack;
+
+  @Before
+  public void createInstall() throws Exception {
+    fileSystem = Jimfs.newFileSystem(Configuration.unix());
+    final var install = SyntheticInstall.create(fileSystem.getPath("/X-Plane 11"));
+    pack = SyntheticInstall.packFolder(install, "MyOrthos");
+  }
+
+  @After
+  public void closeFileSystem() throws Exception {
+    fileSystem.close();
+  }
+
+  private Path dsfFile(final String tile) {
+    final var parsed = new Tile(tile);
+    return pack.resolve("Earth nav data").resolve(parsed.getDsfFolderName()).resolve(tile + ".dsf");
+  }
+
+  private void saveManifest(final List<Path> dsfFiles) {
+    PackManifest.capture(pack, "marker", DETECTION, progress).withDsfFiles(dsfFiles).save();
+  }
+
+  @Test
+  public void loadsManifestOfUnchangedPack() {
+    saveManifest(List.of(dsfFile("+50+008"), dsfFile("+50+009")));
+
+    final var loaded = PackManifest.load(pack, DETECTION, progress);
+
+    assertTrue(loaded.isPresent());
+    assertEquals("marker", loaded.get().getRule());
+    assertEquals(List.of(dsfFile("+50+008"), dsfFile("+50+009")), loaded.get().getDsfFiles());
+  }
+
+  @Test
+  public void ignoresManifestOfOtherDetectionSettings() {
+    saveManifest(List.of(dsfFile("+50+008")));
+
+    assertTrue(PackManifest.load(pack, "{\"orthos\":{\"x\":1}}", progress).isEmpty());
+  }
+
+  @Test
+  public void ignoresManifestListingFilesOutsideOfThePack() throws Exception {
+    saveManifest(List.of(dsfFile("+50+008")));
+    final var file =
+        pack.resolve(
+            Transparency4Ortho.CONFIG.getString("overlay-scanner.pack-manifests.file-name"));
+    final var lines = Files.readAllLines(file);
+    lines.add("../yOverlays/Earth nav data/+50+000/+50+008.dsf");
+    Files.write(file, lines);
+
+    assertTrue(PackManifest.load(pack, DETECTION, progress).isEmpty());
+  }
+}
@@ -0,0 +1,106 @@
+package de.melb00m.tr4o.tiles;
+
+import de.melb00m.tr4o.app.Transparency4Ortho;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Builds a minimal X-Plane installation with some ortho- and non-ortho-sceneries for the tests. */
+final class SyntheticInstall {
+
+  static final String CUSTOM_SCENERY = "Custom Scenery";
+
+  private final Path root;
+  private final List<String> packEntries = new ArrayList<>();
+
+  private SyntheticInstall(final Path root) {
+    this.root = root;
+  }
+
+  /**
+   * Creates the installation:
+   *
+   * <ul>
+   *   <li>{@code zOrtho4XP_+47+011} and {@code zOrtho4XP_+48+011}: Ortho4XP-packs by their name
+   *   <li>{@code MyOrthos}: included by marker-file, four tiles
+   *   <li>{@code TexOrtho}: ortho by its textures, one tile
+   *   <li>{@code yOverlays}, {@code KSEA Airport}, {@code Global Airports}: no ortho-sceneries
+   * </ul>
+   *
+   * @param root Folder of the installation, on any file-system
+   * @return Folder of the installation
+   */
+  static Path create(final Path root) throws IOException {
+    final var install = new SyntheticInstall(root);
+    install.pack("zOrtho4XP_+47+011", "+47+011");
+    Files.createFile(install.packFolder("zOrtho4XP_+47+011").resolve("Ortho4XP_+47+011.cfg"));
+    Files.write(
+        install.packFolder("zOrtho4XP_+47+011").resolve("textures/42384_69648_BI16.dds"),
+        new byte[64]);
+    install.pack("zOrtho4XP_+48+011", "+48+011");
+    install.pack("MyOrthos", "+50+008", "+50+009", "+51+009", "+47+011");
+    Files.createFile(install.packFolder("MyOrthos").resolve("Transparency4Ortho.Include"));
+    install.pack("yOverlays", "+50+008", "+47+011");
+    install.pack("KSEA Airport", "+47-123");
+    Files.write(install.packFolder("KSEA Airport").resolve("Earth nav data/apt.dat"), new byte[1]);
+    install.pack("TexOrtho", "-34+151");
+    Files.write(
+        install.packFolder("TexOrtho").resolve("textures/12345_54321_GO218.dds"), new byte[64]);
+    Files.createDirectories(install.packFolder("NotListed").resolve("Earth nav data"));
+    Files.createDirectories(install.packFolder("Global Airports").resolve("Earth nav data"));
+    Files.write(
+        install.packFolder("Global Airports").resolve("Earth nav data/apt.dat"), new byte[1]);
+    install.packEntries.add("Global Airports");
+    install.writeSceneryPacksIni();
+    return root;
+  }
+
+  private Path packFolder(final String name) {
+    return packFolder(root, name);
+  }
+
+  private void pack(final String name, final String... tiles) throws IOException {
+    final var folder = packFolder(name);
+    Files.createDirectories(folder.resolve("textures"));
+    for (final var tileName : tiles) {
+      final var tile = new Tile(tileName);
+      final var dsfFolder = folder.resolve("Earth nav data").resolve(tile.getDsfFolderName());
+      Files.createDirectories(dsfFolder);
+      Files.write(dsfFolder.resolve(tile + ".dsf"), new byte[128]);
+    }
+    packEntries.add(name);
+  }
+
+  private void writeSceneryPacksIni() throws IOException {
+    final var lines = new ArrayList<String>(List.of("I", "1000 Version", "SCENERY", ""));
+    packEntries.forEach(name -> lines.add("SCENERY_PACK " + CUSTOM_SCENERY + "/" + name + "/"));
+    Files.write(root.resolve(CUSTOM_SCENERY).resolve("scenery_packs.ini"), lines);
+  }
+
+  /**
+   * @param root Folder of the installation
+   * @param options Further command-line options
+   * @return Command for the installation, on the installation's file-system
+   */
+  static Transparency4Ortho command(final Path root, final String... options) {
+    final var command = new Transparency4Ortho(root.getFileSystem());
+    final var args = new String[options.length + 1];
+    args[0] = root.toString();
+    System.arraycopy(options, 0, args, 1, options.length);
+    new CommandLine(command).parseArgs(args);
+    return command;
+  }
+
+  /**
+   * @param root Folder of the installation
+   * @param pack Name of a scenery-pack
+   * @return Folder of the pack
+   */
+  static Path packFolder(final Path root, final String pack) {
+    return root.resolve(CUSTOM_SCENERY).resolve(pack);
+  }
+}
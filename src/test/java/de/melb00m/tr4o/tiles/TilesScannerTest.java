@@ -0,0 +1,89 @@
+package de.melb00m.tr4o.tiles;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TilesScannerTest {
+
+  private static final Set<String> ORTHO_SCENERIES =
+      Set.of("zOrtho4XP_+47+011", "zOrtho4XP_+48+011", "MyOrthos", "TexOrtho");
+  private static final Set<Tile> ORTHO_TILES =
+      Set.of("+47+011", "+48+011", "+50+008", "+50+009", "+51+009", "-34+151").stream()
+          .map(Tile::new)
+          .collect(Collectors.toSet());
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static TilesScannerResult scan(final Path install) {
+    return new TilesScanner(SyntheticInstall.command(install)).scanForOrthoScenery();
+  }
+
+  private static Set<String> orthoSceneryNames(final TilesScannerResult result) {
+    return result.getOrthoFolderToDsfMap().keySet().stream()
+        .map(pack -> pack.getFileName().toString())
+        .collect(Collectors.toSet());
+  }
+
+  private static void assertFindsOrthoSceneries(final TilesScannerResult result) {
+    assertTrue(result.isComplete());
+    assertEquals(ORTHO_SCENERIES, orthoSceneryNames(result));
+    assertEquals(ORTHO_TILES, result.getOrthoCoveredTiles());
+    assertEquals(7, result.getOrthoFolderToDsfMap().size());
+  }
+
+  @Test
+  public void scansInstallOnInMemoryFileSystem() throws Exception {
+    try (final var fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+      final var install = SyntheticInstall.create(fileSystem.getPath("/X-Plane 11"));
+      assertFindsOrthoSceneries(scan(install));
+      // the second scan orders the detectors by the statistics written by the first one
+      assertFindsOrthoSceneries(scan(install));
+    }
+  }
+
+  @Test
+  public void scansInstallOnZipFileSystem() throws Exception {
+    final var zipFile = folder.getRoot().toPath().resolve("install.zip");
+    try (final FileSystem fileSystem =
+        FileSystems.newFileSystem(
+            URI.create("jar:" + zipFile.toUri()), Map.of("create", "true"))) {
+      final var install = SyntheticInstall.create(fileSystem.getPath("/X-Plane 11"));
+      assertFindsOrthoSceneries(scan(install));
+    }
+  }
+
+  @Test
+  public void matchesMarkerFilesIgnoringCaseOnlyWhereTheFileSystemDoes() throws Exception {
+    try (final var unix = Jimfs.newFileSystem(Configuration.unix());
+        final var windows = Jimfs.newFileSystem(Configuration.windows())) {
+      final var caseSensitive = SyntheticInstall.create(unix.getPath("/X-Plane 11"));
+      final var caseInsensitive = SyntheticInstall.create(windows.getPath("C:\\X-Plane 11"));
+      for (final var install : Set.of(caseSensitive, caseInsensitive)) {
+        final var pack = SyntheticInstall.packFolder(install, "MyOrthos");
+        Files.move(
+            pack.resolve("Transparency4Ortho.Include"),
+            pack.resolve("transparency4ortho.include"));
+      }
+
+      assertEquals(
+          Set.of("zOrtho4XP_+47+011", "zOrtho4XP_+48+011", "TexOrtho"),
+          orthoSceneryNames(scan(caseSensitive)));
+      assertEquals(ORTHO_SCENERIES, orthoSceneryNames(scan(caseInsensitive)));
+    }
+  }
+}